@@ -17,11 +17,28 @@ package de.ingogriebsch.maven.sync.packagejson.version.plugin;
 
 import static java.lang.String.format;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonCollector.Params;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
@@ -42,6 +59,27 @@ import org.apache.maven.project.MavenProject;
  */
 public abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo {
 
+    /**
+     * The id of the worker threads which are platform threads.
+     * 
+     * @since 1.4.0
+     */
+    public static final String PLATFORM_THREADS = "platform";
+
+    /**
+     * The id of the worker threads which are virtual threads (if supported by the JDK, otherwise platform threads are used).
+     * 
+     * @since 1.4.0
+     */
+    public static final String VIRTUAL_THREADS = "virtual";
+
+    /**
+     * The ids of all supported kinds of worker threads.
+     * 
+     * @since 1.4.0
+     */
+    public static final Set<String> WORKER_THREADS = ImmutableSet.of(PLATFORM_THREADS, VIRTUAL_THREADS);
+
     /**
      * The factory instance that should be used to evaluate the version of the pom.xml.
      * 
@@ -71,6 +109,22 @@ public abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo
     @Parameter(defaultValue = "${project}", readonly = true)
     protected MavenProject project;
 
+    /**
+     * The Maven session the mojo is executed in.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(defaultValue = "${session}", readonly = true)
+    protected MavenSession session;
+
+    /**
+     * The execution of the mojo.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+    protected MojoExecution mojoExecution;
+
     /**
      * The default constructor which is responsible for initializing common members.
      * <p>
@@ -158,6 +212,26 @@ public abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo
                 format("Property 'pomVersionEvaluation' must contain one of the following values '%s' but contains value '%s'!",
                     Arrays.toString(pomVersionEvaluations.toArray()), pomVersionEvaluation));
         }
+
+        String discovery = getDiscovery();
+        if (!PackageJsonCollector.DISCOVERIES.contains(discovery)) {
+            throw new IllegalArgumentException(
+                format("Property 'discovery' must contain one of the following values '%s' but contains value '%s'!",
+                    Arrays.toString(PackageJsonCollector.DISCOVERIES.toArray()), discovery));
+        }
+
+        int workers = getWorkers();
+        if (workers < 1) {
+            throw new IllegalArgumentException(
+                format("Property 'workers' must be greater than 0 but contains value '%d'!", workers));
+        }
+
+        String workerThreads = getWorkerThreads();
+        if (!WORKER_THREADS.contains(workerThreads)) {
+            throw new IllegalArgumentException(
+                format("Property 'workerThreads' must contain one of the following values '%s' but contains value '%s'!",
+                    Arrays.toString(WORKER_THREADS.toArray()), workerThreads));
+        }
     }
 
     /**
@@ -171,6 +245,101 @@ public abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo
         return true;
     }
 
+    /**
+     * Returns the names of the directories which should not be descended while collecting the <code>package.json's</code>.
+     * 
+     * @return the names of the directories which should not be descended, by default
+     *         {@link PackageJsonCollector#DEFAULT_PRUNE_DIRECTORIES}.
+     * @since 1.4.0
+     */
+    protected String[] getPruneDirectories() {
+        return PackageJsonCollector.DEFAULT_PRUNE_DIRECTORIES;
+    }
+
+    /**
+     * Returns the number of threads which should be used while collecting the <code>package.json's</code>.
+     * 
+     * @return the number of threads which should be used, by default {@code 1} which means that the collection is done
+     *         sequentially.
+     * @since 1.4.0
+     */
+    protected int getParallelism() {
+        return 1;
+    }
+
+    /**
+     * Returns the file of the index which should be used to skip the listing of unchanged directories while collecting the
+     * <code>package.json's</code>.
+     * 
+     * @return the file of the discovery index or {@code null} (the default) if no index should be used.
+     * @since 1.4.0
+     */
+    protected File getDiscoveryIndex() {
+        return null;
+    }
+
+    /**
+     * Returns the id of the discovery which should be used to collect the <code>package.json's</code>.
+     * 
+     * @return the id of the discovery, by default {@link PackageJsonCollector#FILESYSTEM_DISCOVERY}.
+     * @since 1.4.0
+     */
+    protected String getDiscovery() {
+        return PackageJsonCollector.FILESYSTEM_DISCOVERY;
+    }
+
+    /**
+     * Returns the number of threads which should be used while processing the <code>package.json's</code>.
+     * 
+     * @return the number of threads which should be used, by default {@code 1} which means that the files are processed one
+     *         after the other (while the collection is still running).
+     * @since 1.4.0
+     */
+    protected int getWorkers() {
+        return 1;
+    }
+
+    /**
+     * Returns the kind of threads which should be used while processing the <code>package.json's</code>.
+     * 
+     * @return the kind of threads which should be used, by default {@link #PLATFORM_THREADS}.
+     * @since 1.4.0
+     */
+    protected String getWorkerThreads() {
+        return PLATFORM_THREADS;
+    }
+
+    /**
+     * Explains if the discovery of the <code>package.json's</code> should be shared between all modules of the reactor.
+     * 
+     * @return {@code true} if the discovery should be shared, otherwise {@code false} (the default).
+     * @since 1.4.0
+     */
+    protected boolean isSharedDiscovery() {
+        return false;
+    }
+
+    /**
+     * Returns the directory in which the mojo can keep state between the builds of the project.
+     * 
+     * @return the working directory below the build directory of the project.
+     * @since 1.4.0
+     */
+    protected File getWorkingDirectory() {
+        return new File(project.getBuild().getDirectory(), "sync-packagejson-version");
+    }
+
+    /**
+     * Returns the cache of the versions located in the <code>package.json's</code> which is shared by all goals executed in the
+     * same session.
+     * 
+     * @return the cache of the session or {@code null} if the mojo is not executed within a session.
+     * @since 1.4.0
+     */
+    protected HeaderCache getHeaderCache() {
+        return session != null ? HeaderCache.of(session) : null;
+    }
+
     /**
      * Evaluates the version of the pom.xml based on the configuration made on the concrete mojo.
      * 
@@ -191,6 +360,155 @@ public abstract class AbstractMojo extends org.apache.maven.plugin.AbstractMojo
      * @since 1.2.0
      */
     protected List<PackageJson> collectPackageJsons(String[] includes, String[] excludes) {
-        return packageJsonCollector.collect(Params.of(project.getBasedir(), includes, excludes));
+        return packageJsonCollector.collect(params(includes, excludes));
+    }
+
+    /**
+     * Collects the <code>package.json's</code> which should be respected during the execution of the mojo and hands each of
+     * them to the given processor as soon as it is found.
+     * <p>
+     * The processor is executed on a bounded pool of separate threads (see {@link #getWorkers()} and
+     * {@link #getWorkerThreads()}), so the files are read and
+     * written while the collection is still walking the directories. The collection waits as long as all threads are busy, so
+     * the memory needed does not grow with the number of files. If more than one thread is used, the processor has to be
+     * thread-safe. The method returns after all files are processed. If the processor fails, no further file is handed to it:
+     * the collection stops walking the directories, the files which are found but not yet processed are skipped and the threads
+     * which are still processing a file are interrupted. The failure is rethrown once the threads have terminated. With a single
+     * worker the processing therefore stops at the first file which fails, as if the files were processed one after the other.
+     * 
+     * @param includes the optional includes that are used to evaluate which files should be included.
+     * @param excludes the optional excludes that are used to evaluate which files should be included.
+     * @param processor the processor that is called once for each <code>package.json</code> that is found.
+     * @return the number of <code>package.json's</code> that are found.
+     * @throws MojoExecutionException if the processor failed with a checked exception or if the processing was interrupted.
+     * @since 1.4.0
+     */
+    protected int processPackageJsons(String[] includes, String[] excludes, Consumer<PackageJson> processor)
+        throws MojoExecutionException {
+        return processPackageJsons(includes, excludes, processor, () -> false);
+    }
+
+    /**
+     * Collects the <code>package.json's</code> which should be respected during the execution of the mojo and hands each of
+     * them to the given processor as soon as it is found, until the given cancellation condition is met.
+     * <p>
+     * The condition is checked after each processed file. As soon as it is met (or as soon as the processor fails), the
+     * processing is cancelled: the collection stops walking the directories, the files which are found but not yet processed
+     * are skipped and the threads which are still processing a file are interrupted. The method returns after the threads have
+     * terminated.
+     * 
+     * @param includes the optional includes that are used to evaluate which files should be included.
+     * @param excludes the optional excludes that are used to evaluate which files should be included.
+     * @param processor the processor that is called once for each <code>package.json</code> that is found.
+     * @param cancellation the condition which cancels the processing of the remaining files.
+     * @return the number of <code>package.json's</code> that are found until the processing was cancelled.
+     * @throws MojoExecutionException if the processor failed with a checked exception or if the processing was interrupted.
+     * @since 1.4.0
+     */
+    protected int processPackageJsons(String[] includes, String[] excludes, Consumer<PackageJson> processor,
+        BooleanSupplier cancellation) throws MojoExecutionException {
+        int workers = getWorkers();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, threadFactory());
+        // the collection only hands a file to the executor if a thread is free to process it, so neither the queue of the
+        // executor nor anything else grows with the number of files.
+        Semaphore slots = new Semaphore(workers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        BooleanSupplier cancelled = () -> failure.get() != null || cancellation.getAsBoolean();
+
+        AtomicInteger found = new AtomicInteger();
+        try {
+            packageJsonCollector.collect(params(includes, excludes).withCancellation(cancelled), pj -> {
+                slots.acquireUninterruptibly();
+                try {
+                    executor.execute(() -> process(processor, pj, cancelled, failure, executor, slots));
+                    found.incrementAndGet();
+                } catch (RejectedExecutionException e) {
+                    // the processing was cancelled in the meantime.
+                    slots.release();
+                }
+            });
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while processing the package.json's!", e);
+        } finally {
+            executor.shutdownNow();
+            // a processor must not outlive this method, the caller may clean up after a failure right away.
+            Uninterruptibles.awaitTerminationUninterruptibly(executor);
+        }
+
+        Throwable cause = failure.get();
+        if (cause != null) {
+            Throwables.throwIfUnchecked(cause);
+            throw new MojoExecutionException("Caught exception while processing the package.json's!", cause);
+        }
+        return found.get();
+    }
+
+    private static void process(Consumer<PackageJson> processor, PackageJson packageJson, BooleanSupplier cancelled,
+        AtomicReference<Throwable> failure, ExecutorService executor, Semaphore slots) {
+        try {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+            try {
+                processor.accept(packageJson);
+            } catch (Throwable e) {
+                // a processor which fails because it was interrupted through the cancellation does not count as failure.
+                if (!cancelled.getAsBoolean()) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+            if (cancelled.getAsBoolean()) {
+                // the tasks which did not start yet are dropped, their slots are released so the collection never waits
+                // for them.
+                slots.release(executor.shutdownNow().size());
+            }
+        } finally {
+            slots.release();
+        }
+    }
+
+    private ThreadFactory threadFactory() {
+        if (VIRTUAL_THREADS.equals(getWorkerThreads())) {
+            ThreadFactory threadFactory = virtualThreadFactory();
+            if (threadFactory != null) {
+                return threadFactory;
+            }
+            logger.debug("Virtual threads are not supported by this JDK, using platform threads instead.");
+        }
+        return new ThreadFactoryBuilder().setNameFormat("sync-packagejson-version-%d").setDaemon(true).build();
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        // the plugin is compiled for Java 8, so the builder of the virtual threads (Java 21 and later) is only accessible
+        // through reflection.
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object ofVirtual = Thread.class.getMethod("ofVirtual").invoke(null);
+            ofVirtual = builder.getMethod("name", String.class, long.class).invoke(ofVirtual, "sync-packagejson-version-", 0L);
+            return (ThreadFactory) builder.getMethod("factory").invoke(ofVirtual);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // e.g. on Java 19 and 20 virtual threads are a preview feature which is not enabled by default.
+            return null;
+        }
+    }
+
+    private Params params(String[] includes, String[] excludes) {
+        return Params.of(project.getBasedir(), includes, excludes) //
+            .withPruneDirectories(getPruneDirectories()) //
+            .withParallelism(getParallelism()) //
+            .withDiscoveryIndex(getDiscoveryIndex()) //
+            .withSharedDiscovery(isSharedDiscovery() ? sharedDiscovery() : null) //
+            .withDiscovery(getDiscovery());
+    }
+
+    private SharedDiscovery sharedDiscovery() {
+        SharedDiscovery sharedDiscovery = SharedDiscovery.of(session, mojoExecution);
+        if (sharedDiscovery == null) {
+            logger.info("Discovering the package.json's of this module on its own because the modules have no common root.");
+        }
+        return sharedDiscovery;
     }
 }
@@ -0,0 +1,137 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.lang.Integer.MAX_VALUE;
+import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.FileVisitResult.SKIP_SUBTREE;
+import static java.nio.file.FileVisitResult.TERMINATE;
+import static java.util.Collections.emptySet;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import com.google.common.collect.Lists;
+import lombok.SneakyThrows;
+
+/**
+ * A component that walks a directory tree based on
+ * {@link Files#walkFileTree(Path, java.util.Set, int, java.nio.file.FileVisitor)}
+ * and collects the files that are included by the given {@link IncludeExcludeFilter}.
+ * <p>
+ * In contrast to a classic directory scanner the filter is already asked on the directory level, so directories that are
+ * pruned, excluded as a whole or that cannot contain any included file are never listed.
+ *
+ * @since 1.4.0
+ */
+class DirectoryWalker {
+
+    private final Logger logger;
+
+    DirectoryWalker(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Walks the given base directory and returns the paths of the files that are included by the given filter.
+     *
+     * @param baseDir the directory to walk.
+     * @param filter the filter that decides which directories are descended and which files are included.
+     * @return the paths of the included files relative to the base directory.
+     * @since 1.4.0
+     */
+    List<String> walk(Path baseDir, IncludeExcludeFilter filter) {
+        List<String> paths = Lists.newArrayList();
+        walk(baseDir, filter, paths::add);
+        return paths;
+    }
+
+    /**
+     * Walks the given base directory and hands the path of each file that is included by the given filter to the given
+     * consumer as soon as it is found.
+     *
+     * @param baseDir the directory to walk.
+     * @param filter the filter that decides which directories are descended and which files are included.
+     * @param consumer the consumer of the paths of the included files relative to the base directory.
+     * @since 1.4.0
+     */
+    void walk(Path baseDir, IncludeExcludeFilter filter, Consumer<String> consumer) {
+        walk(baseDir, filter, consumer, () -> false);
+    }
+
+    /**
+     * Walks the given base directory and hands the path of each file that is included by the given filter to the given
+     * consumer as soon as it is found. The walk terminates as soon as the given condition is met.
+     *
+     * @param baseDir the directory to walk.
+     * @param filter the filter that decides which directories are descended and which files are included.
+     * @param consumer the consumer of the paths of the included files relative to the base directory.
+     * @param cancellation the condition which cancels the walk, it is checked before each directory and each file.
+     * @since 1.4.0
+     */
+    @SneakyThrows(IOException.class)
+    void walk(Path baseDir, IncludeExcludeFilter filter, Consumer<String> consumer, BooleanSupplier cancellation) {
+        if (!Files.isDirectory(baseDir)) {
+            return;
+        }
+
+        Files.walkFileTree(baseDir, emptySet(), MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (cancellation.getAsBoolean()) {
+                    return TERMINATE;
+                }
+                String path = baseDir.relativize(dir).toString();
+                if (!filter.isDescended(path, String.valueOf(dir.getFileName()))) {
+                    logger.debug("Skipping directory '%s' because it cannot contain any relevant package.json.", path);
+                    return SKIP_SUBTREE;
+                }
+                return CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (cancellation.getAsBoolean()) {
+                    return TERMINATE;
+                }
+                String path = baseDir.relativize(file).toString();
+                if (filter.isIncluded(path) && isFile(file, attrs)) {
+                    consumer.accept(path);
+                }
+                return CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                logger.debug("Ignoring '%s' because it is not accessible [%s].", file, e.getMessage());
+                return CONTINUE;
+            }
+        });
+    }
+
+    private static boolean isFile(Path file, BasicFileAttributes attrs) {
+        // symbolic links are not followed while walking, but a link that points to a file is still a file.
+        return attrs.isRegularFile() || attrs.isSymbolicLink() && Files.isRegularFile(file);
+    }
+}
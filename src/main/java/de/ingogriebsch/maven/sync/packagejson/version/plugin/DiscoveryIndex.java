@@ -0,0 +1,151 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A persistent index which remembers for each directory that was walked its last modification time together with the included
+ * files and the descended subdirectories found in it.
+ * <p>
+ * Because adding, removing or renaming an entry of a directory changes the last modification time of the directory, an entry
+ * of the index can be reused as long as the last modification time of the directory is unchanged. The index is bound to a
+ * key which reflects the includes, excludes and prune directories it was built with and is discarded if the key changes.
+ *
+ * @since 1.4.0
+ */
+class DiscoveryIndex {
+
+    private static final ObjectMapper objectMapper = objectMapper();
+
+    private final Path file;
+    private final String key;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = Maps.newHashMap();
+    private final long createdAt = System.currentTimeMillis();
+
+    private DiscoveryIndex(Path file, String key, Map<String, Entry> previous) {
+        this.file = file;
+        this.key = key;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the index from the given file. Returns an empty index if the file does not exist, is not readable or was built with
+     * a different key.
+     *
+     * @param file the file the index is stored in.
+     * @param key the key which reflects the configuration the index is built with.
+     * @param logger the logger to report why an existing index is not used.
+     * @return the loaded index.
+     * @since 1.4.0
+     */
+    static DiscoveryIndex load(Path file, String key, Logger logger) {
+        Map<String, Entry> entries = Maps.newHashMap();
+        if (Files.isRegularFile(file)) {
+            try {
+                Content content = objectMapper.readValue(file.toFile(), Content.class);
+                if (key.equals(content.getKey()) && content.getDirectories() != null) {
+                    entries = content.getDirectories();
+                } else {
+                    logger.debug("Discarding the discovery index '%s' because the includes or excludes have changed.", file);
+                }
+            } catch (IOException e) {
+                logger.debug("Discarding the discovery index '%s' because it is not readable [%s].", file, e.getMessage());
+            }
+        }
+        return new DiscoveryIndex(file, key, entries);
+    }
+
+    /**
+     * Returns the entry of the given directory if the directory is unchanged since the entry was recorded.
+     *
+     * @param path the path of the directory relative to the base directory.
+     * @param lastModified the current last modification time of the directory.
+     * @return the recorded entry or {@code null} if there is none or if the directory was changed.
+     * @since 1.4.0
+     */
+    Entry lookup(String path, long lastModified) {
+        Entry entry = previous.get(path);
+        return entry != null && entry.getLastModified() == lastModified ? entry : null;
+    }
+
+    /**
+     * Records the entry of the given directory so that it is part of the index if it is saved.
+     *
+     * @param path the path of the directory relative to the base directory.
+     * @param entry the entry describing the directory.
+     * @since 1.4.0
+     */
+    void update(String path, Entry entry) {
+        current.put(path, entry);
+    }
+
+    /**
+     * Saves the entries recorded since the index was loaded. Directories which were modified around the time they were walked
+     * are left out because a change in the same tick of the file system clock would otherwise go unnoticed.
+     *
+     * @throws IOException if the index cannot be written.
+     * @since 1.4.0
+     */
+    void save() throws IOException {
+        Map<String, Entry> directories = Maps.filterValues(current, e -> e.getLastModified() < createdAt - 2000);
+
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        objectMapper.writeValue(temp.toFile(), new Content(key, directories));
+        Files.move(temp, file, REPLACE_EXISTING);
+    }
+
+    private static ObjectMapper objectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.disable(FAIL_ON_UNKNOWN_PROPERTIES);
+        return objectMapper;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Entry {
+
+        private long lastModified;
+        private List<String> files;
+        private List<String> directories;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    private static class Content {
+
+        private String key;
+        private Map<String, Entry> directories;
+    }
+}
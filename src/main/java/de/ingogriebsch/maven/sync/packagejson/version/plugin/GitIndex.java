@@ -0,0 +1,181 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A reader of the index of a git repository (the <code>.git/index</code> file) which returns the paths of the tracked files.
+ * <p>
+ * The index is read directly, versions 2, 3 and 4 of the index format are supported. Submodules and entries of unmerged files
+ * in a stage other than 0 are left out. Linked worktrees, where <code>.git</code> is a file pointing to the actual git
+ * directory, are supported as well.
+ *
+ * @since 1.4.0
+ */
+class GitIndex {
+
+    private static final int SIGNATURE = 0x44495243; // "DIRC"
+    private static final int ENTRY_HEADER_LENGTH = 62;
+    private static final int FLAG_EXTENDED = 0x4000;
+    private static final int MASK_STAGE = 0x3000;
+    private static final int MASK_NAME_LENGTH = 0x0FFF;
+    private static final int MASK_TYPE = 0170000;
+    private static final int TYPE_GITLINK = 0160000;
+
+    private final Path workTree;
+    private final Path file;
+
+    private GitIndex(Path workTree, Path file) {
+        this.workTree = workTree;
+        this.file = file;
+    }
+
+    /**
+     * Returns the index of the git repository the given directory belongs to.
+     *
+     * @param dir a directory inside the work tree of the repository.
+     * @return the index of the repository or {@code null} if the directory does not belong to a repository or if the
+     *         repository has no index.
+     * @throws IOException if the <code>.git</code> file of a linked worktree is not readable.
+     * @since 1.4.0
+     */
+    static GitIndex of(Path dir) throws IOException {
+        for (Path workTree = dir; workTree != null; workTree = workTree.getParent()) {
+            Path git = workTree.resolve(".git");
+            Path gitDir = null;
+            if (Files.isDirectory(git)) {
+                gitDir = git;
+            } else if (Files.isRegularFile(git)) {
+                String content = new String(Files.readAllBytes(git), UTF_8).trim();
+                if (content.startsWith("gitdir:")) {
+                    gitDir = workTree.resolve(content.substring("gitdir:".length()).trim()).normalize();
+                }
+            }
+            if (gitDir != null) {
+                Path index = gitDir.resolve("index");
+                return Files.isRegularFile(index) ? new GitIndex(workTree, index) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the root directory of the work tree the index belongs to.
+     *
+     * @return the root directory of the work tree.
+     * @since 1.4.0
+     */
+    Path getWorkTree() {
+        return workTree;
+    }
+
+    /**
+     * Reads the index and returns the paths of the tracked files in the order of the index.
+     *
+     * @return the paths of the tracked files relative to the root of the work tree, separated through a '/'.
+     * @throws IOException if the index is not readable or if its format is not supported.
+     * @since 1.4.0
+     */
+    List<String> read() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < 12 || buffer.getInt() != SIGNATURE) {
+            throw new IOException("The file is not a git index!");
+        }
+        int version = buffer.getInt();
+        if (version < 2 || version > 4) {
+            throw new IOException("Version " + version + " of the git index is not supported!");
+        }
+
+        int count = buffer.getInt();
+        List<String> paths = Lists.newArrayListWithCapacity(count);
+        byte[] previous = new byte[0];
+        try {
+            for (int i = 0; i < count; i++) {
+                int start = buffer.position();
+                int mode = buffer.getInt(start + 24);
+                int flags = buffer.getShort(start + 60) & 0xFFFF;
+                buffer.position(start + ENTRY_HEADER_LENGTH);
+                if ((flags & FLAG_EXTENDED) != 0) {
+                    buffer.getShort();
+                }
+
+                byte[] name = version < 4 ? name(buffer, flags) : name(buffer, previous);
+                if (version < 4) {
+                    // entries are padded with 1 to 8 NUL bytes to a multiple of 8 bytes.
+                    int length = buffer.position() - start;
+                    buffer.position(start + ((length + 8) & ~7));
+                }
+                previous = name;
+
+                if ((flags & MASK_STAGE) == 0 && (mode & MASK_TYPE) != TYPE_GITLINK) {
+                    paths.add(new String(name, UTF_8));
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("The git index is corrupt [" + e.getMessage() + "]!", e);
+        }
+        return paths;
+    }
+
+    private static byte[] name(ByteBuffer buffer, int flags) {
+        int length = flags & MASK_NAME_LENGTH;
+        if (length < MASK_NAME_LENGTH) {
+            byte[] name = new byte[length];
+            buffer.get(name);
+            return name;
+        }
+        // the name is too long to be stored in the flags and is terminated through a NUL byte instead.
+        byte[] name = new byte[terminator(buffer) - buffer.position()];
+        buffer.get(name);
+        return name;
+    }
+
+    private static byte[] name(ByteBuffer buffer, byte[] previous) {
+        // version 4 stores the number of bytes to remove from the previous name followed by the NUL terminated suffix.
+        int c = buffer.get() & 0xFF;
+        int strip = c & 0x7F;
+        while ((c & 0x80) != 0) {
+            c = buffer.get() & 0xFF;
+            strip = ((strip + 1) << 7) | (c & 0x7F);
+        }
+
+        int suffixLength = terminator(buffer) - buffer.position();
+        int prefixLength = previous.length - strip;
+
+        byte[] name = new byte[prefixLength + suffixLength];
+        System.arraycopy(previous, 0, name, 0, prefixLength);
+        buffer.get(name, prefixLength, suffixLength);
+        buffer.get();
+        return name;
+    }
+
+    private static int terminator(ByteBuffer buffer) {
+        int index = buffer.position();
+        while (buffer.get(index) != 0) {
+            index++;
+        }
+        return index;
+    }
+}
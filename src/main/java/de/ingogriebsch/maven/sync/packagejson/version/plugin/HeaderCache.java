@@ -0,0 +1,242 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.VersionLocator.Location;
+import lombok.EqualsAndHashCode;
+import lombok.SneakyThrows;
+import lombok.Value;
+import lombok.With;
+import org.apache.maven.execution.MavenSession;
+
+/**
+ * A cache of the versions located in the <code>package.json's</code> which is shared by all goals executed in the same
+ * session, so a file which is synchronized early in the build is not parsed again when it is checked later on.
+ * <p>
+ * The locations are the byte offsets found by a parser reading the file as UTF-8. Each entry is bound to the fingerprint of
+ * the file (its size, its last modification time and its file key) which was taken before the file was read, so an entry is
+ * only returned as long as the file is unchanged. The number of entries is bounded, the least recently used entries are
+ * evicted first.
+ * <p>
+ * The fingerprint of a file which was modified shortly before it was taken is not reliable, because a change in the same tick
+ * of the file system clock which keeps the size of the file (e.g. <code>1.2.3</code> to <code>1.2.4</code>) would go
+ * unnoticed. Such a file is only recorded if its fingerprint contains a hash of its content (e.g. the fingerprint the writer
+ * takes of the file it has just written), and the recorded versions are only returned as long as the content has the same
+ * hash. Once the clock has moved on, the entry is bound to the fingerprint alone.
+ *
+ * @since 1.4.0
+ */
+public class HeaderCache {
+
+    /**
+     * The maximum number of files the cache of a session keeps the versions of.
+     *
+     * @since 1.4.0
+     */
+    public static final int MAXIMUM_SIZE = 10_000;
+
+    private static final long RACY_INTERVAL = 2000;
+    private static final Cache<Object, HeaderCache> sessions = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final Cache<Key, Header> headers;
+
+    private HeaderCache(int maximumSize) {
+        headers = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Returns the cache of the given session.
+     *
+     * @param session the session of the current build.
+     * @return the cache of the session.
+     * @since 1.4.0
+     */
+    @SneakyThrows(ExecutionException.class)
+    public static HeaderCache of(MavenSession session) {
+        // the session is cloned for each module in parallel builds, but all clones share the same request.
+        return sessions.get(session.getRequest(), () -> new HeaderCache(MAXIMUM_SIZE));
+    }
+
+    /**
+     * Returns a new cache which is not bound to a session.
+     *
+     * @param maximumSize the maximum number of files the cache keeps the versions of.
+     * @return the cache.
+     * @since 1.4.0
+     */
+    public static HeaderCache of(int maximumSize) {
+        return new HeaderCache(maximumSize);
+    }
+
+    /**
+     * Takes the fingerprint of the given file. The fingerprint has to be taken before the file is read, so that a change made
+     * while reading it does not go unnoticed.
+     *
+     * @param file the file.
+     * @return the fingerprint of the file.
+     * @throws IOException if the attributes of the file are not readable.
+     * @since 1.4.0
+     */
+    public static Fingerprint fingerprint(Path file) throws IOException {
+        return fingerprint(file, false);
+    }
+
+    /**
+     * Takes the fingerprint of the given file, which optionally contains a hash of the content if the file was modified
+     * shortly before. Such a fingerprint allows to record the versions of a file which was just written.
+     *
+     * @param file the file.
+     * @param hashContent if the fingerprint should contain a hash of the content if the file was modified shortly before.
+     * @return the fingerprint of the file.
+     * @throws IOException if the attributes or the content of the file are not readable.
+     * @since 1.4.0
+     */
+    public static Fingerprint fingerprint(Path file, boolean hashContent) throws IOException {
+        long takenAt = System.currentTimeMillis();
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Fingerprint fingerprint =
+            Fingerprint.of(attributes.size(), attributes.lastModifiedTime(), attributes.fileKey(), takenAt, null);
+        return hashContent && fingerprint.isRacy() ? fingerprint.withContent(hash(file)) : fingerprint;
+    }
+
+    /**
+     * Returns the locations of the versions of the given file if they were recorded for the same fingerprint.
+     *
+     * @param file the file.
+     * @param members the paths of the workspace members the versions were located for (empty if the file is no lockfile).
+     * @param fingerprint the current fingerprint of the file.
+     * @return the locations of the versions or {@code null} if there are none or if the file was changed since.
+     * @since 1.4.0
+     */
+    public List<Location> get(Path file, Set<String> members, Fingerprint fingerprint) {
+        Key key = Key.of(normalize(file), members);
+        Header header = headers.getIfPresent(key);
+        if (header == null || !header.getFingerprint().equals(fingerprint)) {
+            return null;
+        }
+        if (header.getFingerprint().isRacy()) {
+            if (!header.getFingerprint().getContent().equals(hashOrNull(file))) {
+                headers.invalidate(key);
+                return null;
+            }
+            // any change after the clock has moved on changes the fingerprint, so the content needs no further checks.
+            if (!fingerprint.isRacy()) {
+                headers.put(key, Header.of(fingerprint.withContent(null), header.getLocations()));
+            }
+        }
+        return header.getLocations();
+    }
+
+    /**
+     * Records the locations of the versions of the given file. Nothing is recorded (and a previous record is dropped) if the file
+     * was modified too shortly before the fingerprint was taken to rely on the fingerprint, unless the fingerprint contains a
+     * hash of the content.
+     *
+     * @param file the file.
+     * @param members the paths of the workspace members the versions were located for (empty if the file is no lockfile).
+     * @param fingerprint the fingerprint of the file which was taken before the versions were located.
+     * @param locations the locations of the versions.
+     * @since 1.4.0
+     */
+    public void put(Path file, Set<String> members, Fingerprint fingerprint, List<Location> locations) {
+        Key key = Key.of(normalize(file), ImmutableSet.copyOf(members));
+        if (fingerprint.isRacy() && fingerprint.getContent() == null) {
+            headers.invalidate(key);
+            return;
+        }
+        headers.put(key, Header.of(fingerprint, ImmutableList.copyOf(locations)));
+    }
+
+    /**
+     * Returns the number of files the cache currently keeps the versions of.
+     *
+     * @return the number of cached files.
+     * @since 1.4.0
+     */
+    public long size() {
+        return headers.size();
+    }
+
+    private static Path normalize(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+
+    private static HashCode hash(Path file) throws IOException {
+        return com.google.common.io.Files.asByteSource(file.toFile()).hash(Hashing.murmur3_128());
+    }
+
+    private static HashCode hashOrNull(Path file) {
+        try {
+            return hash(file);
+        } catch (IOException e) {
+            // the caller reads the file on its own and reports the problem.
+            return null;
+        }
+    }
+
+    /**
+     * The fingerprint of a file.
+     *
+     * @since 1.4.0
+     */
+    @With
+    @Value(staticConstructor = "of")
+    public static class Fingerprint {
+
+        long size;
+        FileTime lastModified;
+        // the file key changes if the file is replaced, e.g. through another tool which writes a temporary file first.
+        Object fileKey;
+        @EqualsAndHashCode.Exclude
+        long takenAt;
+        // the hash of the content if the file was modified shortly before the fingerprint was taken, otherwise null.
+        @EqualsAndHashCode.Exclude
+        HashCode content;
+
+        boolean isRacy() {
+            return lastModified.toMillis() >= takenAt - RACY_INTERVAL;
+        }
+    }
+
+    @Value(staticConstructor = "of")
+    private static class Key {
+
+        Path file;
+        Set<String> members;
+    }
+
+    @Value(staticConstructor = "of")
+    private static class Header {
+
+        Fingerprint fingerprint;
+        List<Location> locations;
+    }
+}
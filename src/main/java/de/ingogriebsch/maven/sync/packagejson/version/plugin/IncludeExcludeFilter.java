@@ -0,0 +1,150 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.io.File.separator;
+import static java.io.File.separatorChar;
+import static java.util.Arrays.stream;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.maven.shared.utils.io.MatchPattern;
+import org.apache.maven.shared.utils.io.MatchPatterns;
+import org.apache.maven.shared.utils.io.SelectorUtils;
+
+/**
+ * A filter that decides based on file-set like include and exclude patterns if a path relative to the base directory is
+ * included and if a directory needs to be descended at all.
+ * <p>
+ * The patterns follow the semantics of the {@link org.apache.maven.shared.utils.io.DirectoryScanner}, i.e. a pattern ending
+ * with a separator matches everything below and no includes at all means that everything is included.
+ *
+ * @since 1.4.0
+ */
+class IncludeExcludeFilter {
+
+    private static final String ANY = "**";
+
+    private final String[] includePatterns;
+    private final MatchPatterns includes;
+    private final MatchPatterns excludes;
+    private final List<MatchPattern> excludedTrees;
+    private final Set<String> pruneDirectories;
+
+    IncludeExcludeFilter(String[] includes, String[] excludes, String[] pruneDirectories) {
+        String[] normalizedIncludes = normalize(includes != null && includes.length > 0 ? includes : new String[] { ANY });
+        String[] normalizedExcludes = normalize(excludes != null ? excludes : new String[0]);
+
+        this.includePatterns = normalizedIncludes;
+        this.includes = MatchPatterns.from(normalizedIncludes);
+        this.excludes = MatchPatterns.from(normalizedExcludes);
+        this.excludedTrees = excludedTrees(normalizedExcludes);
+        this.pruneDirectories = pruneDirectories != null ? stream(pruneDirectories).collect(toSet()) : emptySet();
+    }
+
+    /**
+     * Explains if the file behind the given relative path is included.
+     *
+     * @param path the path of the file relative to the base directory.
+     * @return {@code true} if the file is included and not excluded, otherwise {@code false}.
+     * @since 1.4.0
+     */
+    boolean isIncluded(String path) {
+        return includes.matches(path, true) && !isExcluded(path);
+    }
+
+    /**
+     * Explains if the file behind the given relative path is excluded.
+     *
+     * @param path the path of the file relative to the base directory.
+     * @return {@code true} if the file is excluded, otherwise {@code false}.
+     * @since 1.4.0
+     */
+    boolean isExcluded(String path) {
+        return excludes.matches(path, true);
+    }
+
+    /**
+     * Explains if the directory behind the given relative path needs to be descended, i.e. if it is not pruned, not completely
+     * excluded and if it could contain a file that is included.
+     *
+     * @param path the path of the directory relative to the base directory (empty if it is the base directory itself).
+     * @param name the name of the directory.
+     * @return {@code true} if the directory needs to be descended, otherwise {@code false}.
+     * @since 1.4.0
+     */
+    boolean isDescended(String path, String name) {
+        if (path.isEmpty()) {
+            return true;
+        }
+        if (pruneDirectories.contains(name)) {
+            return false;
+        }
+        if (excludedTrees.stream().anyMatch(p -> p.matchPath(path, true))) {
+            return false;
+        }
+        // MatchPatterns#matchesPatternStart also matches if the pattern does not contain any directory at all.
+        return stream(includePatterns).anyMatch(p -> SelectorUtils.matchPatternStart(p, path, true));
+    }
+
+    /**
+     * Explains if the given pattern is a literal path, i.e. if it does not contain any wildcard and therefore matches exactly
+     * one file which can be resolved without scanning a directory.
+     *
+     * @param pattern the include pattern.
+     * @return {@code true} if the pattern is a literal path, otherwise {@code false}.
+     * @since 1.4.0
+     */
+    static boolean isLiteral(String pattern) {
+        String normalized = normalize(pattern);
+        if (normalized.isEmpty() || normalized.startsWith("%") || normalized.startsWith(separator)) {
+            return false;
+        }
+        // relative segments would never be matched by a scan, so they are left to the scan as well.
+        return normalized.indexOf('*') < 0 && normalized.indexOf('?') < 0
+                && stream(normalized.split(Pattern.quote(separator))).noneMatch(e -> e.equals(".") || e.equals(".."));
+    }
+
+    /**
+     * Normalizes the given pattern in the same way as the include and exclude patterns are normalized.
+     *
+     * @param pattern the pattern to normalize.
+     * @return the normalized pattern which uses the platform dependent separator.
+     * @since 1.4.0
+     */
+    static String normalize(String pattern) {
+        String normalized = pattern.trim().replace('/', separatorChar).replace('\\', separatorChar);
+        return normalized.endsWith(separator) ? normalized + ANY : normalized;
+    }
+
+    private static String[] normalize(String[] patterns) {
+        return stream(patterns).map(IncludeExcludeFilter::normalize).toArray(String[]::new);
+    }
+
+    private static List<MatchPattern> excludedTrees(String[] excludes) {
+        // an exclude like 'dir/**' excludes everything below 'dir', so the directory itself does not need to be descended.
+        String suffix = separator + ANY;
+        return stream(excludes) //
+            .filter(e -> e.endsWith(suffix)) //
+            .map(e -> MatchPattern.fromString(e.substring(0, e.length() - suffix.length()))) //
+            .collect(toList());
+    }
+}
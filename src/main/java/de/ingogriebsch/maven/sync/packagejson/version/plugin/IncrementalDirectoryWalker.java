@@ -0,0 +1,167 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import com.google.common.collect.Lists;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.DiscoveryIndex.Entry;
+
+/**
+ * A component that walks a directory tree with the help of a {@link DiscoveryIndex} and collects the files that are included
+ * by the given {@link IncludeExcludeFilter}.
+ * <p>
+ * Directories whose last modification time is unchanged since the index was written are not listed again, the included files
+ * and descended subdirectories are taken from the index instead. So a walk over an unchanged tree only needs one
+ * <code>stat</code> per descended directory.
+ *
+ * @since 1.4.0
+ */
+class IncrementalDirectoryWalker {
+
+    private final Logger logger;
+
+    IncrementalDirectoryWalker(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Walks the given base directory and returns the paths of the files that are included by the given filter. Every directory
+     * that is walked is recorded in the given index.
+     *
+     * @param baseDir the directory to walk.
+     * @param filter the filter that decides which directories are descended and which files are included.
+     * @param index the index which is used to skip the listing of unchanged directories.
+     * @return the paths of the included files relative to the base directory.
+     * @since 1.4.0
+     */
+    List<String> walk(Path baseDir, IncludeExcludeFilter filter, DiscoveryIndex index) {
+        List<String> paths = Lists.newArrayList();
+        walk(baseDir, filter, index, paths::add);
+        return paths;
+    }
+
+    /**
+     * Walks the given base directory and hands the path of each file that is included by the given filter to the given
+     * consumer as soon as it is found. Every directory that is walked is recorded in the given index.
+     *
+     * @param baseDir the directory to walk.
+     * @param filter the filter that decides which directories are descended and which files are included.
+     * @param index the index which is used to skip the listing of unchanged directories.
+     * @param consumer the consumer of the paths of the included files relative to the base directory.
+     * @since 1.4.0
+     */
+    void walk(Path baseDir, IncludeExcludeFilter filter, DiscoveryIndex index, Consumer<String> consumer) {
+        walk(baseDir, filter, index, consumer, () -> false);
+    }
+
+    /**
+     * Walks the given base directory and hands the path of each file that is included by the given filter to the given
+     * consumer as soon as it is found. The walk terminates as soon as the given condition is met, only the directories which
+     * were walked completely are recorded in the given index.
+     *
+     * @param baseDir the directory to walk.
+     * @param filter the filter that decides which directories are descended and which files are included.
+     * @param index the index which is used to skip the listing of unchanged directories.
+     * @param consumer the consumer of the paths of the included files relative to the base directory.
+     * @param cancellation the condition which cancels the walk, it is checked before each directory.
+     * @since 1.4.0
+     */
+    void walk(Path baseDir, IncludeExcludeFilter filter, DiscoveryIndex index, Consumer<String> consumer,
+        BooleanSupplier cancellation) {
+        if (!Files.isDirectory(baseDir)) {
+            return;
+        }
+
+        int listed = 0;
+        int reused = 0;
+        Deque<Path> dirs = new ArrayDeque<>();
+        dirs.push(baseDir);
+        while (!dirs.isEmpty() && !cancellation.getAsBoolean()) {
+            Path dir = dirs.pop();
+            String path = baseDir.relativize(dir).toString();
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(dir, BasicFileAttributes.class, NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                logger.debug("Ignoring '%s' because it is not accessible [%s].", dir, e.getMessage());
+                continue;
+            }
+
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            Entry entry = index.lookup(path, lastModified);
+            if (entry != null) {
+                reused++;
+            } else {
+                entry = list(baseDir, dir, lastModified, filter);
+                listed++;
+            }
+            if (entry == null) {
+                continue;
+            }
+            index.update(path, entry);
+
+            entry.getFiles().forEach(f -> consumer.accept(baseDir.relativize(dir.resolve(f)).toString()));
+            entry.getDirectories().forEach(d -> dirs.push(dir.resolve(d)));
+        }
+
+        logger.debug("Walked '%s' with the discovery index [%d directories reused, %d directories listed].", baseDir, reused,
+            listed);
+    }
+
+    private Entry list(Path baseDir, Path dir, long lastModified, IncludeExcludeFilter filter) {
+        List<String> files = Lists.newArrayList();
+        List<String> directories = Lists.newArrayList();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                String name = String.valueOf(entry.getFileName());
+                String path = baseDir.relativize(entry).toString();
+                BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class, NOFOLLOW_LINKS);
+
+                if (attrs.isDirectory()) {
+                    if (filter.isDescended(path, name)) {
+                        directories.add(name);
+                    }
+                } else if (filter.isIncluded(path) && isFile(entry, attrs)) {
+                    files.add(name);
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // an incomplete listing must not end up in the index, so the directory is listed again next time.
+            logger.debug("Ignoring '%s' because it is not accessible [%s].", dir, e.getMessage());
+            return null;
+        }
+        return new Entry(lastModified, files, directories);
+    }
+
+    private static boolean isFile(Path file, BasicFileAttributes attrs) {
+        // symbolic links are not followed while walking, but a link that points to a file is still a file.
+        return attrs.isRegularFile() || attrs.isSymbolicLink() && Files.isRegularFile(file);
+    }
+}
@@ -28,4 +28,15 @@ public class PackageJson {
     public String getName() {
         return separatorsToUnix(substringAfter(file.getAbsolutePath(), baseDir.getAbsolutePath() + separator));
     }
+
+    /**
+     * Returns if the file is a lockfile of npm (which contains the version of the project more than once).
+     * 
+     * @return {@code true} if the file is a <code>package-lock.json</code> or a <code>npm-shrinkwrap.json</code>.
+     * @since 1.4.0
+     */
+    public boolean isLockfile() {
+        String fileName = file.getName();
+        return "package-lock.json".equals(fileName) || "npm-shrinkwrap.json".equals(fileName);
+    }
 }
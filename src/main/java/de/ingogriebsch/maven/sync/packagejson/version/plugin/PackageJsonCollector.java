@@ -16,17 +16,32 @@
 package de.ingogriebsch.maven.sync.packagejson.version.plugin;
 
 import static java.util.Arrays.stream;
+import static java.util.Collections.singletonList;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.partitioningBy;
 import static java.util.stream.Collectors.toList;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static org.apache.commons.io.FilenameUtils.separatorsToSystem;
+import static org.apache.commons.io.FilenameUtils.separatorsToUnix;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import lombok.Value;
-import org.apache.maven.shared.model.fileset.FileSet;
-import org.apache.maven.shared.model.fileset.util.FileSetManager;
+import lombok.With;
 
 /**
  * A component that collects the <code>package.json</code> like files.
@@ -35,10 +50,51 @@ import org.apache.maven.shared.model.fileset.util.FileSetManager;
  */
 public class PackageJsonCollector {
 
+    /**
+     * The names of the directories that are not descended by default while collecting the <code>package.json's</code>.
+     * 
+     * @since 1.4.0
+     */
+    public static final String[] DEFAULT_PRUNE_DIRECTORIES = { "node_modules", ".git", "target" };
+
+    /**
+     * The id of the discovery which collects the <code>package.json's</code> by walking the file system (the default).
+     * 
+     * @since 1.4.0
+     */
+    public static final String FILESYSTEM_DISCOVERY = "filesystem";
+
+    /**
+     * The id of the discovery which collects the <code>package.json's</code> of the workspace members declared in the
+     * <code>package.json</code> or the <code>pnpm-workspace.yaml</code> of the base directory.
+     * 
+     * @since 1.4.0
+     */
+    public static final String WORKSPACES_DISCOVERY = "workspaces";
+
+    /**
+     * The id of the discovery which collects the <code>package.json's</code> from the files tracked in the index of the git
+     * repository the base directory belongs to. Falls back to walking the file system if there is no repository.
+     * 
+     * @since 1.4.0
+     */
+    public static final String GIT_DISCOVERY = "git";
+
+    /**
+     * The ids of all supported discoveries.
+     * 
+     * @since 1.4.0
+     */
+    public static final Set<String> DISCOVERIES = ImmutableSet.of(FILESYSTEM_DISCOVERY, WORKSPACES_DISCOVERY, GIT_DISCOVERY);
+
     private final Logger logger;
+    private final DirectoryWalker directoryWalker;
+    private final WorkspaceResolver workspaceResolver;
 
     public PackageJsonCollector(Logger logger) {
         this.logger = logger;
+        this.directoryWalker = new DirectoryWalker(logger);
+        this.workspaceResolver = new WorkspaceResolver(logger);
     }
 
     /**
@@ -49,55 +105,262 @@ public class PackageJsonCollector {
      * @since 1.2.0
      */
     public List<PackageJson> collect(Params params) {
-        FileSet fileSet = prepareFileSet(params);
-        logger.debug("Using fileSet [%s] to collect the relevant package.json's.", asString(fileSet));
-
-        String[] fileNames = new FileSetManager().getIncludedFiles(fileSet);
-        List<PackageJson> files = stream(fileNames).map(n -> packageJson(n, params)).collect(toList());
+        Set<PackageJson> files = Sets.newTreeSet(comparing(PackageJson::getName));
+        collect(params, files::add);
 
         logger.debug("Collected the following package.json's: %s.", files);
-        return files;
+        return newArrayList(files);
     }
 
-    private static PackageJson packageJson(String packageJsonFilename, Params params) {
-        return PackageJson.of(params.getBaseDir(), new File(params.getBaseDir(), packageJsonFilename));
+    /**
+     * Collects the <code>package.json's</code> that are found based on the given includes and excludes and hands each of them
+     * to the given consumer as soon as it is found, so the files can be processed while the collection is still in progress.
+     * <p>
+     * The consumer is called once per file and never concurrently, but not necessarily from the calling thread and not in a
+     * defined order. If the parameters contain a cancellation, the collection stops walking the directories and stops calling
+     * the consumer as soon as the cancellation condition is met.
+     * 
+     * @param params the parameters that are used to collect the relevant <code>package.json's</code>.
+     * @param consumer the consumer of the <code>package.json's</code> that are found.
+     * @since 1.4.0
+     */
+    public void collect(Params params, Consumer<PackageJson> consumer) {
+        logger.debug("Using %s to collect the relevant package.json's.", params);
+
+        Path baseDir = params.getBaseDir().toPath().toAbsolutePath().normalize();
+        String[] patterns =
+            WORKSPACES_DISCOVERY.equals(params.getDiscovery()) ? workspaceIncludes(baseDir, params) : params.getIncludes();
+        Map<Boolean, List<String>> includes = classify(patterns);
+
+        BooleanSupplier cancellation = cancellation(params);
+        Set<String> paths = Sets.newHashSet();
+        Consumer<String> emitter = path -> {
+            synchronized (paths) {
+                if (!cancellation.getAsBoolean() && paths.add(path) && isClaimed(baseDir, path, params)) {
+                    consumer.accept(packageJson(path, params));
+                }
+            }
+        };
+
+        resolve(baseDir, includes.get(true), params).forEach(emitter);
+        if (isScanRequired(patterns, includes.get(false)) && !cancellation.getAsBoolean()) {
+            walk(baseDir, includes.get(false).toArray(new String[0]), params, emitter, cancellation);
+        }
+    }
+
+    private static BooleanSupplier cancellation(Params params) {
+        BooleanSupplier cancellation = params.getCancellation();
+        return cancellation != null ? cancellation : () -> false;
+    }
+
+    private boolean isClaimed(Path baseDir, String path, Params params) {
+        SharedDiscovery sharedDiscovery = params.getSharedDiscovery();
+        return sharedDiscovery == null || !sharedDiscovery.claim(baseDir, singletonList(path), logger).isEmpty();
+    }
+
+    private String[] workspaceIncludes(Path baseDir, Params params) {
+        String[] includes = params.getIncludes();
+        List<String> patterns = workspaceResolver.resolve(baseDir);
+        if (patterns == null || includes == null || includes.length == 0) {
+            logger.debug("No workspace declared in '%s', therefore collecting the package.json's through the file system.",
+                baseDir);
+            return includes;
+        }
+
+        // the members are the directories matched by the workspace patterns which contain a package.json.
+        List<String> members = workspaceResolver.members(baseDir, patterns, pruneDirectories(params));
+
+        List<String> workspaceIncludes = Lists.newArrayList(includes);
+        for (String member : members) {
+            stream(includes).map(i -> member + "/" + i).forEach(workspaceIncludes::add);
+        }
+        logger.debug("Collecting the package.json's of the workspace members %s.", members);
+        return workspaceIncludes.toArray(new String[0]);
+    }
+
+    private void walk(Path baseDir, String[] globs, Params params, Consumer<String> consumer, BooleanSupplier cancellation) {
+        String[] pruneDirectories = pruneDirectories(params);
+        IncludeExcludeFilter filter = new IncludeExcludeFilter(globs, params.getExcludes(), pruneDirectories);
+
+        if (GIT_DISCOVERY.equals(params.getDiscovery())) {
+            List<String> paths = tracked(baseDir, filter, pruneDirectories);
+            if (paths != null) {
+                paths.forEach(consumer);
+                return;
+            }
+        }
+
+        SharedDiscovery sharedDiscovery = params.getSharedDiscovery();
+        if (sharedDiscovery != null) {
+            List<String> paths = sharedDiscovery.walk(baseDir, filter, globs, pruneDirectories);
+            if (paths != null) {
+                paths.forEach(consumer);
+                return;
+            }
+            logger.debug("Walking '%s' on its own because it is not part of the reactor.", baseDir);
+        }
+
+        File discoveryIndex = params.getDiscoveryIndex();
+        if (discoveryIndex != null) {
+            String key = new StringBuilder(baseDir.toAbsolutePath().toString()) //
+                .append(Arrays.toString(globs)) //
+                .append(Arrays.toString(params.getExcludes())) //
+                .append(Arrays.toString(pruneDirectories)) //
+                .toString();
+            if (params.getParallelism() > 1) {
+                logger.info("Ignoring the parallelism of %d because the discovery index is walked sequentially.",
+                    params.getParallelism());
+            }
+            walk(baseDir, filter, DiscoveryIndex.load(discoveryIndex.toPath(), key, logger), consumer, cancellation);
+            return;
+        }
+
+        int parallelism = params.getParallelism();
+        if (parallelism > 1) {
+            logger.debug("Walking '%s' with a parallelism of %d.", baseDir, parallelism);
+            new ParallelDirectoryWalker(logger, parallelism).walk(baseDir, filter, consumer, cancellation);
+            return;
+        }
+        directoryWalker.walk(baseDir, filter, consumer, cancellation);
     }
 
-    private static FileSet prepareFileSet(Params params) {
-        FileSet fileSet = new FileSet();
-        fileSet.setFollowSymlinks(false);
-        fileSet.setUseDefaultExcludes(false);
-        fileSet.setDirectory(params.getBaseDir().getAbsolutePath());
-        fileSet.setIncludes(asList(params.getIncludes()));
-        fileSet.setExcludes(asList(params.getExcludes()));
-        return fileSet;
+    private void walk(Path baseDir, IncludeExcludeFilter filter, DiscoveryIndex index, Consumer<String> consumer,
+        BooleanSupplier cancellation) {
+        new IncrementalDirectoryWalker(logger).walk(baseDir, filter, index, consumer, cancellation);
+        try {
+            index.save();
+        } catch (IOException e) {
+            logger.warn("Unable to save the discovery index [%s], the next collection needs to walk all directories again.",
+                e.getMessage());
+        }
     }
 
-    private static List<String> asList(String[] elements) {
-        return elements != null ? Arrays.asList(elements) : newArrayList();
+    private List<String> tracked(Path baseDir, IncludeExcludeFilter filter, String[] pruneDirectories) {
+        GitIndex index;
+        List<String> tracked;
+        try {
+            index = GitIndex.of(baseDir);
+            if (index == null) {
+                logger.debug("Walking '%s' because it does not belong to a git repository.", baseDir);
+                return null;
+            }
+            tracked = index.read();
+        } catch (IOException e) {
+            logger.debug("Walking '%s' because the git index is not readable [%s].", baseDir, e.getMessage());
+            return null;
+        }
+
+        String prefix = separatorsToUnix(index.getWorkTree().relativize(baseDir).toString());
+        prefix = prefix.isEmpty() ? prefix : prefix + "/";
+        Set<String> prune = Sets.newHashSet(pruneDirectories);
+
+        List<String> paths = newArrayList();
+        for (String file : tracked) {
+            if (!file.startsWith(prefix)) {
+                continue;
+            }
+            String path = file.substring(prefix.length());
+            if (isPruned(path, prune)) {
+                continue;
+            }
+            // a tracked file may have been deleted from the work tree without the deletion being staged yet.
+            path = separatorsToSystem(path);
+            if (filter.isIncluded(path) && Files.isRegularFile(baseDir.resolve(path))) {
+                paths.add(path);
+            }
+        }
+
+        logger.debug("Took the package.json's of '%s' from the %d files tracked in the git index.", baseDir, tracked.size());
+        return paths;
     }
 
+    private static boolean isPruned(String path, Set<String> pruneDirectories) {
+        String[] segments = path.split("/");
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (pruneDirectories.contains(segments[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<String> resolve(Path baseDir, List<String> literals, Params params) {
+        if (literals.isEmpty()) {
+            return newArrayList();
+        }
+
+        logger.debug("Resolving the literal includes %s without scanning the directory.", literals);
+        IncludeExcludeFilter filter = new IncludeExcludeFilter(null, params.getExcludes(), null);
+        return literals //
+            .stream() //
+            .filter(l -> !filter.isExcluded(l) && Files.isRegularFile(baseDir.resolve(l))) //
+            .collect(toList());
+    }
+
+    private static Map<Boolean, List<String>> classify(String[] includes) {
+        return stream(includes != null ? includes : new String[0]) //
+            .collect(partitioningBy(IncludeExcludeFilter::isLiteral, mapping(i -> IncludeExcludeFilter.normalize(i), toList())));
+    }
+
+    private static boolean isScanRequired(String[] includes, List<String> globs) {
+        // no includes at all means that everything is included, which can only be answered through a scan.
+        return includes == null || includes.length == 0 || !globs.isEmpty();
+    }
+
+    private static PackageJson packageJson(String packageJsonFilename, Params params) {
+        return PackageJson.of(params.getBaseDir(), new File(params.getBaseDir(), packageJsonFilename));
+    }
+
+    private static String[] pruneDirectories(Params params) {
+        String[] pruneDirectories = params.getPruneDirectories();
+        return pruneDirectories != null ? pruneDirectories : DEFAULT_PRUNE_DIRECTORIES;
+    }
+
+    @With
     @Value(staticConstructor = "of")
     public static class Params {
 
         File baseDir;
         String[] includes;
         String[] excludes;
+        String[] pruneDirectories;
+        int parallelism;
+        File discoveryIndex;
+        SharedDiscovery sharedDiscovery;
+        String discovery;
+        BooleanSupplier cancellation;
 
         public static Params of(File baseDir, String[] includes) {
             return of(baseDir, includes, null);
         }
-    }
 
-    private static String asString(FileSet fileSet) {
-        return new StringBuilder("FileSet(") //
-            .append("directory=") //
-            .append(fileSet.getDirectory()) //
-            .append(", includes=") //
-            .append(fileSet.getIncludes()) //
-            .append(", excludes=") //
-            .append(fileSet.getExcludes()) //
-            .append(")") //
-            .toString();
+        public static Params of(File baseDir, String[] includes, String[] excludes) {
+            return of(baseDir, includes, excludes, null, 1, null, null, null, null);
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder("Params(") //
+                .append("baseDir=") //
+                .append(baseDir.getAbsolutePath()) //
+                .append(", includes=") //
+                .append(Arrays.toString(includes)) //
+                .append(", excludes=") //
+                .append(Arrays.toString(excludes)) //
+                .append(", pruneDirectories=") //
+                .append(Arrays.toString(pruneDirectories)) //
+                .append(", parallelism=") //
+                .append(parallelism) //
+                .append(", discoveryIndex=") //
+                .append(discoveryIndex) //
+                .append(", sharedDiscovery=") //
+                .append(sharedDiscovery != null) //
+                .append(", discovery=") //
+                .append(discovery) //
+                .append(", cancellation=") //
+                .append(cancellation != null) //
+                .append(")") //
+                .toString();
+        }
     }
 }
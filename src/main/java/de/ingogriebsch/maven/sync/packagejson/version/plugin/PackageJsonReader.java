@@ -0,0 +1,240 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.lang.String.format;
+import static java.nio.charset.CodingErrorAction.REPLACE;
+import static java.nio.charset.StandardCharsets.UTF_16BE;
+import static java.nio.charset.StandardCharsets.UTF_16LE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.CharConversionException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.json.UTF8StreamJsonParser;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import lombok.Value;
+
+/**
+ * A component that opens a streaming {@link JsonParser} on a <code>package.json</code> which reads the file in the configured
+ * encoding.
+ * <p>
+ * A byte order mark at the start of the file takes precedence over the configured encoding and is skipped. A file in UTF-8 is
+ * parsed right from its bytes, only the values the parser is asked for are decoded into strings. A file in another encoding
+ * is decoded while it is read, so it is neither read completely nor held in memory as a whole either.
+ * <p>
+ * The buffers of the parsers are taken from a pool and are returned to it once a parser is closed, so they are reused across
+ * the files even if each file is read on its own (virtual) thread.
+ *
+ * @since 1.4.0
+ */
+public class PackageJsonReader {
+
+    private static final int POOL_SIZE = 64;
+    private static final byte[][] BYTE_ORDER_MARKS = { //
+        { 0x00, 0x00, (byte) 0xFE, (byte) 0xFF }, //
+        { (byte) 0xFF, (byte) 0xFE, 0x00, 0x00 }, //
+        { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF }, //
+        { (byte) 0xFE, (byte) 0xFF }, //
+        { (byte) 0xFF, (byte) 0xFE } };
+    private static final String[] BYTE_ORDER_MARK_CHARSETS =
+        { "UTF-32BE", "UTF-32LE", UTF_8.name(), UTF_16BE.name(), UTF_16LE.name() };
+
+    private static final PooledJsonFactory jsonFactory = new PooledJsonFactory();
+    private static final Queue<BufferRecycler> recyclers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private PackageJsonReader() {
+    }
+
+    /**
+     * Opens a parser on the given file. The file is read through a channel, so a thread which is interrupted while reading
+     * stops right away. The parser needs to be closed to release the file and the buffers.
+     *
+     * @param file the file.
+     * @param encoding the encoding in which the file is interpreted if it does not start with a byte order mark.
+     * @return the parser which is positioned in front of the root value.
+     * @throws CharConversionException if the file is interpreted as UTF-8 but looks like being encoded in UTF-16 or UTF-32.
+     * @throws IOException if the file is not readable.
+     * @since 1.4.0
+     */
+    public static JsonParser open(Path file, Charset encoding) throws IOException {
+        FileChannel channel = FileChannel.open(file, READ);
+        BufferRecycler recycler = recycler();
+        try {
+            Encoding detected = detect(channel, encoding);
+            JsonParser parser;
+            if (UTF_8.equals(detected.getCharset())) {
+                // the byte order mark of UTF-8 is skipped by the parser itself.
+                parser = jsonFactory.createParser(recycler, Channels.newInputStream(channel));
+                if (!(parser instanceof UTF8StreamJsonParser)) {
+                    parser.close();
+                    throw new CharConversionException(format("'%s' is not encoded in UTF-8!", file));
+                }
+            } else {
+                channel.position(detected.getByteOrderMarkLength());
+                Reader reader = Channels.newReader(channel,
+                    detected.getCharset().newDecoder().onMalformedInput(REPLACE).onUnmappableCharacter(REPLACE), -1);
+                parser = jsonFactory.createParser(recycler, reader);
+            }
+            return new PooledJsonParser(parser, recycler);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Detects the encoding of the given content through its byte order mark.
+     *
+     * @param content the content, at least its first four bytes.
+     * @param length the number of bytes of the content which are available.
+     * @param encoding the encoding in which the content is interpreted if it does not start with a byte order mark.
+     * @return the encoding the content is interpreted in.
+     * @since 1.4.0
+     */
+    public static Encoding detect(byte[] content, int length, Charset encoding) {
+        for (int i = 0; i < BYTE_ORDER_MARKS.length; i++) {
+            byte[] mark = BYTE_ORDER_MARKS[i];
+            if (startsWith(content, length, mark)) {
+                return Encoding.of(Charset.forName(BYTE_ORDER_MARK_CHARSETS[i]), mark.length);
+            }
+        }
+        return Encoding.of(encoding, 0);
+    }
+
+    /**
+     * Detects the encoding of the file behind the given channel through its byte order mark. The position of the channel is
+     * not changed.
+     *
+     * @param channel the channel of the file.
+     * @param encoding the encoding in which the file is interpreted if it does not start with a byte order mark.
+     * @return the encoding the file is interpreted in.
+     * @throws IOException if the file is not readable.
+     * @since 1.4.0
+     */
+    public static Encoding detect(FileChannel channel, Charset encoding) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(4);
+        // a channel may return less bytes than requested, even if the file is longer.
+        int read;
+        do {
+            read = channel.read(head, head.position());
+        } while (read > 0 && head.hasRemaining());
+        return detect(head.array(), head.position(), encoding);
+    }
+
+    private static boolean startsWith(byte[] content, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (content[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BufferRecycler recycler() {
+        BufferRecycler recycler = recyclers.poll();
+        return recycler != null ? recycler : new BufferRecycler();
+    }
+
+    /**
+     * The encoding a file is interpreted in.
+     *
+     * @since 1.4.0
+     */
+    @Value(staticConstructor = "of")
+    public static class Encoding {
+
+        Charset charset;
+        // the number of bytes of the byte order mark at the start of the file, 0 if there is none.
+        int byteOrderMarkLength;
+    }
+
+    /**
+     * A factory which hands the given buffers to the parser it creates, instead of the buffers bound to the current thread.
+     */
+    private static class PooledJsonFactory extends JsonFactory {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ThreadLocal<BufferRecycler> leased = new ThreadLocal<>();
+
+        @Override
+        public BufferRecycler _getBufferRecycler() {
+            BufferRecycler recycler = leased.get();
+            return recycler != null ? recycler : super._getBufferRecycler();
+        }
+
+        JsonParser createParser(BufferRecycler recycler, InputStream input) throws IOException {
+            leased.set(recycler);
+            try {
+                return createParser(input);
+            } finally {
+                leased.remove();
+            }
+        }
+
+        JsonParser createParser(BufferRecycler recycler, Reader reader) throws IOException {
+            leased.set(recycler);
+            try {
+                return createParser(reader);
+            } finally {
+                leased.remove();
+            }
+        }
+    }
+
+    /**
+     * A parser which returns its buffers to the pool once it is closed.
+     */
+    private static class PooledJsonParser extends JsonParserDelegate {
+
+        private BufferRecycler recycler;
+
+        PooledJsonParser(JsonParser parser, BufferRecycler recycler) {
+            super(parser);
+            this.recycler = recycler;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                // the buffers must not be returned twice, otherwise two parsers would share them.
+                if (recycler != null) {
+                    recyclers.offer(recycler);
+                    recycler = null;
+                }
+            }
+        }
+    }
+}
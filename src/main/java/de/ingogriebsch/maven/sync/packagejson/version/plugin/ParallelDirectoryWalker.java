@@ -0,0 +1,172 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A component that walks a directory tree in parallel on top of a {@link ForkJoinPool} and collects the files that are
+ * included by the given {@link IncludeExcludeFilter}.
+ * <p>
+ * Each directory is listed by its own task, the subdirectories that need to be descended are forked as new tasks. The
+ * directories are pruned in the same way as through the {@link DirectoryWalker}. The order of the returned paths is not
+ * defined.
+ *
+ * @since 1.4.0
+ */
+class ParallelDirectoryWalker {
+
+    private final Logger logger;
+    private final int parallelism;
+
+    ParallelDirectoryWalker(Logger logger, int parallelism) {
+        this.logger = logger;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Walks the given base directory and returns the paths of the files that are included by the given filter.
+     *
+     * @param baseDir the directory to walk.
+     * @param filter the filter that decides which directories are descended and which files are included.
+     * @return the paths of the included files relative to the base directory.
+     * @since 1.4.0
+     */
+    List<String> walk(Path baseDir, IncludeExcludeFilter filter) {
+        Collection<String> paths = new ConcurrentLinkedQueue<>();
+        walk(baseDir, filter, paths::add);
+        return Lists.newArrayList(paths);
+    }
+
+    /**
+     * Walks the given base directory and hands the path of each file that is included by the given filter to the given
+     * consumer as soon as it is found. The consumer is called concurrently from the threads of the walk and therefore needs to
+     * be thread-safe.
+     *
+     * @param baseDir the directory to walk.
+     * @param filter the filter that decides which directories are descended and which files are included.
+     * @param consumer the consumer of the paths of the included files relative to the base directory.
+     * @since 1.4.0
+     */
+    void walk(Path baseDir, IncludeExcludeFilter filter, Consumer<String> consumer) {
+        walk(baseDir, filter, consumer, () -> false);
+    }
+
+    /**
+     * Walks the given base directory and hands the path of each file that is included by the given filter to the given
+     * consumer as soon as it is found. The walk terminates as soon as the given condition is met, the directories which are
+     * not listed yet are skipped.
+     *
+     * @param baseDir the directory to walk.
+     * @param filter the filter that decides which directories are descended and which files are included.
+     * @param consumer the consumer of the paths of the included files relative to the base directory.
+     * @param cancellation the condition which cancels the walk, it is checked before each directory and each entry of it.
+     * @since 1.4.0
+     */
+    void walk(Path baseDir, IncludeExcludeFilter filter, Consumer<String> consumer, BooleanSupplier cancellation) {
+        if (!Files.isDirectory(baseDir)) {
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DirectoryTask(baseDir, baseDir, filter, consumer, cancellation));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path baseDir;
+        private final transient Path dir;
+        private final transient IncludeExcludeFilter filter;
+        private final transient Consumer<String> consumer;
+        private final transient BooleanSupplier cancellation;
+
+        DirectoryTask(Path baseDir, Path dir, IncludeExcludeFilter filter, Consumer<String> consumer,
+            BooleanSupplier cancellation) {
+            this.baseDir = baseDir;
+            this.dir = dir;
+            this.filter = filter;
+            this.consumer = consumer;
+            this.cancellation = cancellation;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancellation.getAsBoolean()) {
+                return;
+            }
+            List<DirectoryTask> tasks = Lists.newArrayList();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (cancellation.getAsBoolean()) {
+                        return;
+                    }
+                    visit(entry, tasks);
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                logger.debug("Ignoring '%s' because it is not accessible [%s].", dir, e.getMessage());
+            }
+            invokeAll(tasks);
+        }
+
+        private void visit(Path entry, List<DirectoryTask> tasks) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(entry, BasicFileAttributes.class, NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                logger.debug("Ignoring '%s' because it is not accessible [%s].", entry, e.getMessage());
+                return;
+            }
+            String path = baseDir.relativize(entry).toString();
+
+            if (attrs.isDirectory()) {
+                if (filter.isDescended(path, String.valueOf(entry.getFileName()))) {
+                    tasks.add(new DirectoryTask(baseDir, entry, filter, consumer, cancellation));
+                } else {
+                    logger.debug("Skipping directory '%s' because it cannot contain any relevant package.json.", path);
+                }
+            } else if (filter.isIncluded(path) && isFile(entry, attrs)) {
+                consumer.accept(path);
+            }
+        }
+
+        private boolean isFile(Path file, BasicFileAttributes attrs) {
+            // symbolic links are not followed while walking, but a link that points to a file is still a file.
+            return attrs.isRegularFile() || attrs.isSymbolicLink() && Files.isRegularFile(file);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.io.File.separator;
+import static java.lang.Integer.MAX_VALUE;
+import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.FileVisitResult.SKIP_SUBTREE;
+import static java.util.Arrays.stream;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.SneakyThrows;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.utils.io.SelectorUtils;
+
+/**
+ * A discovery which is shared between all modules of a reactor build.
+ * <p>
+ * The directory tree below the root of the reactor is walked only once (per combination of include patterns and prune
+ * directories) and kept in memory. The query of a module is answered from this tree, the subtrees that belong to other
+ * modules of the reactor which execute the same goal are not descended. Each file is reported by the module it belongs to (the
+ * module with the nearest base directory among the modules which execute the goal) and only once per goal execution, even if
+ * several modules share the same base directory. A module which executes the same goal again (e.g. because the lifecycle is
+ * run twice) reports its files again.
+ *
+ * @since 1.4.0
+ */
+public class SharedDiscovery {
+
+    private static final Cache<Object, Reactor> reactors = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final Reactor reactor;
+    private final String scope;
+    private final Object module;
+    private final Set<Path> executingDirs;
+
+    private SharedDiscovery(Reactor reactor, String scope, Object module, Set<Path> executingDirs) {
+        this.reactor = reactor;
+        this.scope = scope;
+        this.module = module;
+        this.executingDirs = executingDirs;
+    }
+
+    /**
+     * Returns the shared discovery of the given session for the given execution of a goal. Only the modules which execute the
+     * same goal of this plugin (either because the goal was given on the command line or because the module declares an
+     * execution of it) take over the files below their base directory.
+     *
+     * @param session the session of the current build.
+     * @param execution the execution of the goal.
+     * @return the shared discovery of the session or {@code null} if the modules of the reactor have no common root directory.
+     * @since 1.4.0
+     */
+    public static SharedDiscovery of(MavenSession session, MojoExecution execution) {
+        String goal = execution.getGoal();
+        MojoDescriptor mojoDescriptor = execution.getMojoDescriptor();
+        PluginDescriptor plugin = mojoDescriptor != null ? mojoDescriptor.getPluginDescriptor() : null;
+        Predicate<MavenProject> executing =
+            plugin == null || isInvoked(session.getGoals(), plugin, goal) ? p -> true : p -> isDeclared(p, plugin, goal);
+        return of(session, goal + "@" + execution.getExecutionId(), executing);
+    }
+
+    /**
+     * Returns the shared discovery of the given session.
+     *
+     * @param session the session of the current build.
+     * @param scope the scope in which a file is reported only once, usually the goal and the id of the execution.
+     * @return the shared discovery of the session or {@code null} if the modules of the reactor have no common root directory.
+     * @since 1.4.0
+     */
+    public static SharedDiscovery of(MavenSession session, String scope) {
+        return of(session, scope, p -> true);
+    }
+
+    /**
+     * Returns the shared discovery of the given session.
+     *
+     * @param session the session of the current build.
+     * @param scope the scope in which a file is reported only once, usually the goal and the id of the execution.
+     * @param executing the predicate which decides if a module executes the goal in the same scope.
+     * @return the shared discovery of the session or {@code null} if the modules of the reactor have no common root directory.
+     * @since 1.4.0
+     */
+    @SneakyThrows(ExecutionException.class)
+    public static SharedDiscovery of(MavenSession session, String scope, Predicate<MavenProject> executing) {
+        // the session is cloned for each module in parallel builds, but all clones share the same request.
+        Reactor reactor = reactors.get(session.getRequest(), () -> new Reactor(moduleDirs(session.getProjects())));
+        if (reactor.rootDir == null) {
+            return null;
+        }
+        Set<Path> executingDirs = reactor.executingDirs.computeIfAbsent(scope,
+            s -> session.getProjects().stream().filter(executing).map(p -> normalize(p.getBasedir().toPath())).collect(toSet()));
+        return new SharedDiscovery(reactor, scope, session.getCurrentProject(), executingDirs);
+    }
+
+    /**
+     * Walks the in-memory tree below the given base directory and returns the paths of the files that are included by the given
+     * filter.
+     *
+     * @param baseDir the base directory of the module.
+     * @param filter the filter that decides which directories are descended and which files are included.
+     * @param globs the include patterns the filter is based on.
+     * @param pruneDirectories the names of the directories which are never descended.
+     * @return the paths of the included files relative to the base directory or {@code null} if the base directory is not part
+     *         of the reactor.
+     * @since 1.4.0
+     */
+    List<String> walk(Path baseDir, IncludeExcludeFilter filter, String[] globs, String[] pruneDirectories) {
+        Node node = reactor.tree(globs, pruneDirectories).find(reactor.rootDir.relativize(baseDir));
+        if (node == null) {
+            return null;
+        }
+
+        List<String> paths = Lists.newArrayList();
+        walk(baseDir, node, "", filter, paths);
+        return paths;
+    }
+
+    /**
+     * Claims the given files for the module with the given base directory and returns the ones that are reported by this
+     * module, i.e. the ones which do not belong to another module executing the same goal and which were not claimed before by
+     * another module in the same scope.
+     *
+     * @param baseDir the base directory of the module.
+     * @param paths the paths of the files relative to the base directory.
+     * @param logger the logger to report the files which are not claimed.
+     * @return the paths of the files which are reported by this module.
+     * @since 1.4.0
+     */
+    Collection<String> claim(Path baseDir, Collection<String> paths, Logger logger) {
+        List<String> claimed = Lists.newArrayList();
+        for (String path : paths) {
+            Path file = baseDir.resolve(path);
+            Path owner = owner(file);
+            if (owner != null && !owner.equals(baseDir)) {
+                logger.debug("Skipping '%s' because it belongs to the module in '%s'.", path, owner);
+            } else if (!isClaimed(file, baseDir)) {
+                logger.debug("Skipping '%s' because it was already reported by another module.", path);
+            } else {
+                claimed.add(path);
+            }
+        }
+        return claimed;
+    }
+
+    private boolean isClaimed(Path file, Path baseDir) {
+        // the module is unknown outside of a reactor build, the base directory stands in for it then.
+        Object claimant = module != null ? module : baseDir;
+        Object previous = reactor.claims.putIfAbsent(scope + File.pathSeparator + file, claimant);
+        return previous == null || previous.equals(claimant);
+    }
+
+    private Path owner(Path file) {
+        for (Path dir = file.getParent(); dir != null; dir = dir.getParent()) {
+            if (executingDirs.contains(dir)) {
+                return dir;
+            }
+        }
+        return null;
+    }
+
+    private void walk(Path baseDir, Node node, String path, IncludeExcludeFilter filter, List<String> paths) {
+        for (String file : node.files) {
+            String filePath = path.isEmpty() ? file : path + separator + file;
+            if (filter.isIncluded(filePath)) {
+                paths.add(filePath);
+            }
+        }
+
+        for (Map.Entry<String, Node> entry : node.directories.entrySet()) {
+            String name = entry.getKey();
+            String dirPath = path.isEmpty() ? name : path + separator + name;
+            if (executingDirs.contains(baseDir.resolve(dirPath))) {
+                // the subtree is owned by another module and will be queried by that module.
+                continue;
+            }
+            if (filter.isDescended(dirPath, name)) {
+                walk(baseDir, entry.getValue(), dirPath, filter, paths);
+            }
+        }
+    }
+
+    private static boolean isInvoked(List<String> goals, PluginDescriptor plugin, String goal) {
+        // a goal given on the command line is executed by all modules of the reactor.
+        String key = plugin.getGroupId() + ":" + plugin.getArtifactId() + ":";
+        return goals != null && goals.stream()
+            .anyMatch(g -> g.endsWith(":" + goal) && (g.equals(plugin.getGoalPrefix() + ":" + goal) || g.startsWith(key)));
+    }
+
+    private static boolean isDeclared(MavenProject project, PluginDescriptor plugin, String goal) {
+        return project.getBuildPlugins().stream().filter(p -> p.getKey().equals(plugin.getPluginLookupKey()))
+            .map(Plugin::getExecutions).flatMap(List::stream).anyMatch(e -> e.getGoals().contains(goal));
+    }
+
+    /**
+     * Returns the deepest directory which contains all of the given directories.
+     *
+     * @param dirs the directories.
+     * @return the common ancestor or {@code null} if the directories have no common root (e.g. if they are located on different
+     *         drives).
+     * @since 1.4.0
+     */
+    static Path commonAncestor(Collection<Path> dirs) {
+        Path ancestor = null;
+        for (Path dir : dirs) {
+            if (ancestor == null) {
+                ancestor = dir;
+            }
+            while (!dir.startsWith(ancestor)) {
+                ancestor = ancestor.getParent();
+                if (ancestor == null) {
+                    return null;
+                }
+            }
+        }
+        return ancestor;
+    }
+
+    private static Set<Path> moduleDirs(List<MavenProject> projects) {
+        return projects.stream().map(p -> normalize(p.getBasedir().toPath())).collect(toSet());
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    private static final class Reactor {
+
+        private final Path rootDir;
+        private final Map<String, Node> trees = new ConcurrentHashMap<>();
+        private final Map<String, Object> claims = new ConcurrentHashMap<>();
+        private final Map<String, Set<Path>> executingDirs = new ConcurrentHashMap<>();
+
+        private Reactor(Set<Path> moduleDirs) {
+            this.rootDir = commonAncestor(moduleDirs);
+        }
+
+        private Node tree(String[] globs, String[] pruneDirectories) {
+            String key = Arrays.toString(globs) + Arrays.toString(pruneDirectories);
+            return trees.computeIfAbsent(key, k -> Node.of(rootDir, globs, pruneDirectories));
+        }
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> directories = Maps.newTreeMap();
+        private final List<String> files = Lists.newArrayList();
+
+        private Node find(Path path) {
+            Node node = this;
+            for (Path element : path) {
+                if (element.toString().isEmpty()) {
+                    continue;
+                }
+                if (node == null || element.toString().equals("..")) {
+                    return null;
+                }
+                node = node.directories.get(element.toString());
+            }
+            return node;
+        }
+
+        @SneakyThrows(IOException.class)
+        private static Node of(Path rootDir, String[] globs, String[] pruneDirectories) {
+            // only the file names that can be matched by the last element of an include are kept in memory.
+            List<String> names = stream(globs.length > 0 ? globs : new String[] { "*" }) //
+                .map(g -> g.startsWith("%") ? "*" : g.substring(g.lastIndexOf(separator) + 1)) //
+                .collect(toList());
+            Set<String> prune = pruneDirectories != null ? stream(pruneDirectories).collect(toSet()) : emptySet();
+            Map<Path, Node> nodes = Maps.newHashMap();
+            Node root = new Node();
+            nodes.put(rootDir, root);
+
+            Files.walkFileTree(rootDir, emptySet(), MAX_VALUE, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.equals(rootDir)) {
+                        return CONTINUE;
+                    }
+                    String name = String.valueOf(dir.getFileName());
+                    if (prune.contains(name)) {
+                        return SKIP_SUBTREE;
+                    }
+                    Node node = new Node();
+                    nodes.get(dir.getParent()).directories.put(name, node);
+                    nodes.put(dir, node);
+                    return CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = String.valueOf(file.getFileName());
+                    if (names.stream().anyMatch(n -> SelectorUtils.match(n, name, true))
+                            && (attrs.isRegularFile() || attrs.isSymbolicLink() && Files.isRegularFile(file))) {
+                        nodes.get(file.getParent()).files.add(name);
+                    }
+                    return CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    nodes.remove(dir);
+                    return CONTINUE;
+                }
+            });
+            return root;
+        }
+    }
+}
@@ -1,20 +1,28 @@
 package de.ingogriebsch.maven.sync.packagejson.version.plugin;
 
-import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
-import lombok.Value;
 import org.apache.maven.project.MavenProject;
 
 /**
  * A {@link PomVersionEvaluator} that returns the static version of the Maven project.
  * <p>
  * This means that the implementation checks the content of the pom.xml file and extracts the value of the 'version' element.
+ * The file is read through a streaming parser which stops as soon as the version of the project is read. All other elements
+ * below the project (like the dependencies, the build or the profiles) are skipped without being looked at, only the version
+ * of the parent is picked up on the way.
  * 
  * @since 1.1.0
  *
@@ -22,42 +30,77 @@ import org.apache.maven.project.MavenProject;
 @RequiredArgsConstructor
 class StaticPomVersionEvaluator implements PomVersionEvaluator {
 
-    private static final XmlMapper xmlMapper = xmlMapper();
+    private static final XMLInputFactory xmlInputFactory = xmlInputFactory();
     private final Logger logger;
 
     @Override
-    @SneakyThrows(IOException.class)
+    @SneakyThrows({ IOException.class, XMLStreamException.class })
     public String get(MavenProject mavenProject) {
         File file = new File(mavenProject.getBasedir(), "pom.xml");
         logger.debug("Reading the version from pom file '%s'...", file.getAbsolutePath());
-        Project project = xmlMapper.readValue(file, Project.class);
 
-        String version = project.getVersion();
-        if (version == null) {
-            logger.debug("Version of the projects pom file is not given, therefore falling back to the version of the parent...");
-            Project.Parent parent = project.getParent();
-            version = parent != null ? parent.getVersion() : null;
+        String version;
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(input);
+            try {
+                version = read(reader);
+            } finally {
+                reader.close();
+            }
         }
 
         logger.debug("Evaluated pom file version '%s' [in a static way].", version);
         return version;
     }
 
-    private static XmlMapper xmlMapper() {
-        return XmlMapper.builder().disable(FAIL_ON_UNKNOWN_PROPERTIES).build();
-    }
-
-    @Value
-    private static class Project {
-
-        Parent parent;
-        String version;
+    private String read(XMLStreamReader reader) throws XMLStreamException {
+        reader.nextTag();
+        String parentVersion = null;
+        while (reader.nextTag() == START_ELEMENT) {
+            String name = reader.getLocalName();
+            if ("version".equals(name)) {
+                return reader.getElementText().trim();
+            } else if ("parent".equals(name)) {
+                parentVersion = readParentVersion(reader);
+            } else {
+                skip(reader);
+            }
+        }
 
-        @Value
-        private static class Parent {
+        logger.debug("Version of the projects pom file is not given, therefore falling back to the version of the parent...");
+        return parentVersion;
+    }
 
-            String version;
+    private static String readParentVersion(XMLStreamReader reader) throws XMLStreamException {
+        String version = null;
+        while (reader.nextTag() == START_ELEMENT) {
+            if ("version".equals(reader.getLocalName())) {
+                version = reader.getElementText().trim();
+            } else {
+                skip(reader);
+            }
+        }
+        return version;
+    }
 
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        // the content of the element is only walked through, nothing of it is bound or kept.
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == START_ELEMENT) {
+                depth++;
+            } else if (event == END_ELEMENT) {
+                depth--;
+            }
         }
     }
+
+    private static XMLInputFactory xmlInputFactory() {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        // a pom.xml neither needs a DTD nor external entities, not resolving them keeps the parser from going to the network.
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return xmlInputFactory;
+    }
 }
@@ -0,0 +1,188 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.util.Collections.emptySet;
+
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_NUMBER_INT;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_STRING;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.Lists;
+import lombok.Value;
+
+/**
+ * A component that locates the top-level version of a <code>package.json</code> through a streaming {@link JsonParser}.
+ * <p>
+ * Only the fields of the root object are inspected, nested objects and arrays are skipped without being looked at. The parser
+ * stops as soon as the version is read, so the remaining content of the file is neither tokenized nor necessarily read.
+ * <p>
+ * An npm lockfile in version 2 or 3 contains the version of the project a second time as the version of the root package
+ * (<code>packages[""].version</code>). Both versions are located in the same pass, the packages behind the root package are
+ * neither tokenized nor necessarily read. The versions of the workspace members listed among the packages can be located in
+ * the same pass.
+ *
+ * @since 1.4.0
+ */
+public class VersionLocator {
+
+    private VersionLocator() {
+    }
+
+    /**
+     * Locates the top-level version in the content the given parser is reading. The parser is left right behind the version.
+     *
+     * @param parser the parser which is positioned in front of the root value.
+     * @return the location of the version or {@code null} if the root value is not an object or if it has no version string.
+     * @throws IOException if the content is not readable or not valid JSON (up to the version).
+     * @since 1.4.0
+     */
+    public static Location locate(JsonParser parser) throws IOException {
+        return parser.nextToken() == START_OBJECT ? locate(parser, true) : null;
+    }
+
+    /**
+     * Locates the top-level version and the version of the root package of the npm lockfile the given parser is reading.
+     * <p>
+     * The parser stops as soon as both versions are read or as soon as it is clear that the lockfile does not contain a root
+     * package (because the version of the lockfile is lower than 2).
+     *
+     * @param parser the parser which is positioned in front of the root value.
+     * @return the locations of the versions in the order of their appearance, an empty list if the root value is not an object
+     *         or if there is no version string at all.
+     * @throws IOException if the content is not readable or not valid JSON (up to the versions).
+     * @since 1.4.0
+     */
+    public static List<Location> locateLockfile(JsonParser parser) throws IOException {
+        return locateLockfile(parser, emptySet());
+    }
+
+    /**
+     * Locates the top-level version, the version of the root package and the versions of the given workspace members of the
+     * npm lockfile the given parser is reading.
+     * <p>
+     * The workspace members are looked up by their path (relative to the directory of the lockfile) among the packages of the
+     * lockfile. The parser stops as soon as all versions are read.
+     *
+     * @param parser the parser which is positioned in front of the root value.
+     * @param members the paths of the workspace members (e.g. <code>packages/a</code>).
+     * @return the locations of the versions in the order of their appearance, an empty list if the root value is not an object
+     *         or if there is no version string at all.
+     * @throws IOException if the content is not readable or not valid JSON (up to the versions).
+     * @since 1.4.0
+     */
+    public static List<Location> locateLockfile(JsonParser parser, Set<String> members) throws IOException {
+        List<Location> locations = Lists.newArrayListWithCapacity(members.size() + 2);
+        if (parser.nextToken() != START_OBJECT) {
+            return locations;
+        }
+
+        boolean version = false;
+        boolean packages = false;
+        while (!(version && packages) && parser.nextToken() == FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == VALUE_STRING && "version".equals(field) && !version) {
+                locations.add(location(parser));
+                version = true;
+            } else if (token == VALUE_NUMBER_INT && "lockfileVersion".equals(field) && parser.getIntValue() < 2) {
+                // older lockfiles do not know the packages.
+                packages = true;
+            } else if (token == START_OBJECT && "packages".equals(field) && !packages) {
+                locatePackages(parser, members, version, locations);
+                packages = true;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return locations;
+    }
+
+    private static void locatePackages(JsonParser parser, Set<String> members, boolean stopIfLocated, List<Location> locations)
+        throws IOException {
+        // the root package has the empty path.
+        int remaining = members.size() + 1;
+        while (parser.nextToken() == FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == START_OBJECT && remaining > 0 && ("".equals(field) || members.contains(field))) {
+                Location location = locate(parser, false);
+                if (location != null) {
+                    locations.add(location);
+                }
+                if (--remaining == 0 && stopIfLocated) {
+                    return;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static Location locate(JsonParser parser, boolean stopAtVersion) throws IOException {
+        // the parser is positioned on the start of an object and is left on the end of it (unless stopping at the version).
+        Location location = null;
+        while (parser.nextToken() == FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == VALUE_STRING && "version".equals(field) && location == null) {
+                location = location(parser);
+                if (stopAtVersion) {
+                    return location;
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return location;
+    }
+
+    private static Location location(JsonParser parser) throws IOException {
+        // the token starts with the opening quote and the parser stops right behind the closing quote.
+        long start = offset(parser.getTokenLocation()) + 1;
+        String version = parser.getText();
+        long end = offset(parser.getCurrentLocation()) - 1;
+        return Location.of(version, start, end);
+    }
+
+    private static long offset(JsonLocation location) {
+        // parsers reading characters only know the character offset, parsers reading bytes only the byte offset.
+        long charOffset = location.getCharOffset();
+        return charOffset >= 0 ? charOffset : location.getByteOffset();
+    }
+
+    /**
+     * The location of the version of a <code>package.json</code>.
+     * <p>
+     * The offsets are character offsets if the content was parsed from characters and byte offsets if it was parsed from
+     * bytes. They enclose the raw value between the quotes, which may differ from the version if it contains escapes.
+     *
+     * @since 1.4.0
+     */
+    @Value(staticConstructor = "of")
+    public static class Location {
+
+        String version;
+        long start;
+        long end;
+    }
+}
@@ -0,0 +1,208 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static org.apache.commons.io.FilenameUtils.separatorsToSystem;
+import static org.apache.commons.io.FilenameUtils.separatorsToUnix;
+import static org.apache.commons.lang3.StringUtils.removeEnd;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import lombok.SneakyThrows;
+
+/**
+ * A component that reads the workspace patterns declared by the JavaScript tooling of a project.
+ * <p>
+ * The patterns are taken from the <code>pnpm-workspace.yaml</code> (field <code>packages</code>) if available, otherwise from
+ * the <code>package.json</code> (field <code>workspaces</code>, either as an array or as an object with a field
+ * <code>packages</code>) which is used by npm and yarn.
+ * <p>
+ * The members are resolved from the patterns without walking the project: each pattern is expanded one directory level per
+ * segment, so only the directories named by a pattern are listed. Only a <code>**</code> segment lists the directories below
+ * it recursively.
+ *
+ * @since 1.4.0
+ */
+class WorkspaceResolver {
+
+    private static final ObjectMapper jsonMapper = new ObjectMapper();
+    private static final YAMLMapper yamlMapper = new YAMLMapper();
+
+    private final Logger logger;
+
+    WorkspaceResolver(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Returns the workspace patterns declared in the given directory.
+     *
+     * @param baseDir the directory which contains the workspace manifest.
+     * @return the workspace patterns (patterns starting with a '!' are negated) or {@code null} if the directory does not
+     *         declare a workspace.
+     * @since 1.4.0
+     */
+    @SneakyThrows(IOException.class)
+    List<String> resolve(Path baseDir) {
+        Path pnpmWorkspace = baseDir.resolve("pnpm-workspace.yaml");
+        if (Files.isRegularFile(pnpmWorkspace)) {
+            List<String> patterns = patterns(yamlMapper.readTree(pnpmWorkspace.toFile()).path("packages"));
+            logger.debug("Read workspace patterns %s from '%s'.", patterns, pnpmWorkspace);
+            return patterns;
+        }
+
+        Path packageJson = baseDir.resolve("package.json");
+        if (Files.isRegularFile(packageJson)) {
+            JsonNode workspaces = jsonMapper.readTree(packageJson.toFile()).path("workspaces");
+            if (workspaces.isObject()) {
+                workspaces = workspaces.path("packages");
+            }
+            if (workspaces.isArray()) {
+                List<String> patterns = patterns(workspaces);
+                logger.debug("Read workspace patterns %s from '%s'.", patterns, packageJson);
+                return patterns;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the directories of the workspace members which are matched by the given patterns and contain a
+     * <code>package.json</code>.
+     *
+     * @param baseDir the directory which contains the workspace manifest.
+     * @param patterns the workspace patterns (patterns starting with a '!' are negated).
+     * @param pruneDirectories the names of the directories which are not expanded through a wildcard.
+     * @return the paths of the member directories relative to the base directory (separated through '/'), in a defined order.
+     * @since 1.4.0
+     */
+    @SneakyThrows(IOException.class)
+    List<String> members(Path baseDir, List<String> patterns, String[] pruneDirectories) {
+        Set<String> prune = ImmutableSet.copyOf(pruneDirectories);
+        String[] excludes = patterns.stream().filter(p -> p.startsWith("!")).map(p -> normalize(p.substring(1)) + "/package.json")
+            .toArray(String[]::new);
+        IncludeExcludeFilter filter = new IncludeExcludeFilter(null, excludes, null);
+
+        Set<String> members = Sets.newTreeSet();
+        for (String pattern : patterns) {
+            if (pattern.startsWith("!")) {
+                continue;
+            }
+            for (String dir : expand(baseDir, normalize(pattern), prune)) {
+                if (Files.isRegularFile(baseDir.resolve(dir).resolve("package.json"))
+                        && !filter.isExcluded(separatorsToSystem(dir + "/package.json"))) {
+                    members.add(dir);
+                }
+            }
+        }
+        logger.debug("Resolved the workspace members %s of '%s'.", members, baseDir);
+        return Lists.newArrayList(members);
+    }
+
+    /**
+     * Normalizes the given workspace pattern, i.e. strips a leading <code>./</code> and a trailing separator.
+     *
+     * @param pattern the workspace pattern (without a leading '!').
+     * @return the normalized pattern which is separated through '/'.
+     * @since 1.4.0
+     */
+    static String normalize(String pattern) {
+        String normalized = separatorsToUnix(pattern.trim());
+        while (normalized.startsWith("./")) {
+            normalized = normalized.substring(2);
+        }
+        return removeEnd(normalized, "/");
+    }
+
+    private static List<String> expand(Path baseDir, String pattern, Set<String> prune) throws IOException {
+        List<String> dirs = Lists.newArrayList("");
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            List<String> expanded = Lists.newArrayList();
+            for (String dir : dirs) {
+                if (segment.equals("**")) {
+                    expanded.add(dir);
+                    descendants(baseDir, dir, prune, expanded);
+                } else if (segment.indexOf('*') < 0 && segment.indexOf('?') < 0 && segment.indexOf('[') < 0
+                        && segment.indexOf('{') < 0) {
+                    String child = child(dir, segment);
+                    if (Files.isDirectory(baseDir.resolve(child))) {
+                        expanded.add(child);
+                    }
+                } else {
+                    children(baseDir, dir, segment, prune, expanded);
+                }
+            }
+            dirs = expanded;
+        }
+        return dirs;
+    }
+
+    private static void children(Path baseDir, String dir, String glob, Set<String> prune, List<String> result)
+        throws IOException {
+        Path parent = baseDir.resolve(dir);
+        if (!Files.isDirectory(parent)) {
+            return;
+        }
+        PathMatcher matcher = parent.getFileSystem().getPathMatcher("glob:" + glob);
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(parent, Files::isDirectory)) {
+            for (Path child : children) {
+                String name = child.getFileName().toString();
+                // like the globs of npm, a wildcard matches neither hidden nor pruned directories.
+                if (!name.startsWith(".") && !prune.contains(name) && matcher.matches(child.getFileName())) {
+                    result.add(child(dir, name));
+                }
+            }
+        }
+    }
+
+    private static void descendants(Path baseDir, String dir, Set<String> prune, List<String> result) throws IOException {
+        List<String> children = Lists.newArrayList();
+        children(baseDir, dir, "*", prune, children);
+        for (String child : children) {
+            result.add(child);
+            descendants(baseDir, child, prune, result);
+        }
+    }
+
+    private static String child(String dir, String name) {
+        return dir.isEmpty() ? name : dir + "/" + name;
+    }
+
+    private static List<String> patterns(JsonNode node) {
+        List<String> patterns = Lists.newArrayList();
+        node.forEach(n -> {
+            if (n.isTextual() && !n.asText().trim().isEmpty()) {
+                patterns.add(n.asText().trim());
+            }
+        });
+        return patterns;
+    }
+}
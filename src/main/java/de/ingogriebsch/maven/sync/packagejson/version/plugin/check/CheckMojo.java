@@ -17,18 +17,29 @@ package de.ingogriebsch.maven.sync.packagejson.version.plugin.check;
 
 import static java.lang.String.format;
 import static java.nio.charset.Charset.forName;
-import static java.util.stream.Collectors.toList;
+import static java.util.Collections.emptySet;
 
 import static org.apache.maven.plugins.annotations.LifecyclePhase.VERIFY;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import javax.inject.Singleton;
 
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.AbstractMojo;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.HeaderCache;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJson;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.check.FingerprintStore.Entry;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.check.VersionValidator.ConstraintViolation;
+import lombok.SneakyThrows;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -86,6 +97,93 @@ class CheckMojo extends AbstractMojo {
     @Parameter(property = PROPERTY_PREFIX + "excludes")
     private String[] excludes;
 
+    /**
+     * The rule how the package.json files are discovered. Permissible values are 'filesystem', 'workspaces' and 'git'. If set
+     * to 'workspaces', the includes are applied to the projects root directory and to each workspace member declared in the
+     * package.json or the pnpm-workspace.yaml of the projects root directory. If set to 'git', only the files tracked in the
+     * index of the git repository are taken into account (falling back to 'filesystem' if there is no repository).
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "discovery", defaultValue = "filesystem")
+    private String discovery = "filesystem";
+
+    /**
+     * The names of the directories which are not descended while collecting the package.json files, independent of the
+     * includes and excludes.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "pruneDirectories", defaultValue = "node_modules,.git,target")
+    private String[] pruneDirectories;
+
+    /**
+     * The number of threads which are used to collect the package.json files. A value greater than 1 walks the directories in
+     * parallel. It has no effect if the discovery index is used, the index is walked sequentially.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "parallelism", defaultValue = "1")
+    private int parallelism = 1;
+
+    /**
+     * Flag to control if an index of the walked directories is kept in the build directory, so that unchanged directories do not
+     * need to be listed again while collecting the package.json files. The index is walked sequentially, so the parallelism is
+     * ignored if the index is used.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "discoveryIndex", defaultValue = "false")
+    private boolean discoveryIndex = false;
+
+    /**
+     * The number of threads which are used to validate the package.json files. A value greater than 1 validates different
+     * files concurrently, the violations are reported in the same (sorted) order anyway.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "workers", defaultValue = "1")
+    private int workers = 1;
+
+    /**
+     * The kind of threads which are used to validate the package.json files. Permissible values are 'platform' and 'virtual'.
+     * Virtual threads suit the I/O bound validation and are used if the JDK supports them (Java 21 and later), otherwise
+     * platform threads are used.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "workerThreads", defaultValue = "platform")
+    private String workerThreads = PLATFORM_THREADS;
+
+    /**
+     * Flag to control if the package.json files are discovered once for all modules of the reactor. If enabled, each file is
+     * only reported by the module with the nearest base directory among the modules which execute the same goal, so a parent
+     * module does not report the files of its child modules (unless a child module does not execute the goal).
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "sharedDiscovery", defaultValue = "false")
+    private boolean sharedDiscovery = false;
+
+    /**
+     * Flag to control if the package.json files which were found in sync are remembered in the build directory, so that an
+     * unchanged file (same size and last modification time) does not need to be read again while the version of the pom.xml is
+     * unchanged as well.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "fingerprints", defaultValue = "false")
+    private boolean fingerprints = false;
+
+    /**
+     * Flag to control if the fingerprint of a package.json contains a hash of its content as well. This notices changes which
+     * keep the size and the last modification time of a file, but requires each file to be read.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "fingerprintContent", defaultValue = "false")
+    private boolean fingerprintContent = false;
+
     /**
      * Flag to control if the execution of the goal should fail if no package.json is found.
      * 
@@ -94,6 +192,43 @@ class CheckMojo extends AbstractMojo {
     @Parameter(property = PROPERTY_PREFIX + "failIfNoneFound", defaultValue = "true")
     private boolean failIfNoneFound = true;
 
+    /**
+     * Flag to control if the execution of the goal should fail as soon as the first package.json is found which is not in sync.
+     * The collection of the remaining package.json files and the validation of the package.json files which are still being
+     * read are cancelled in this case.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "failFast", defaultValue = "false")
+    private boolean failFast = false;
+
+    /**
+     * The formats of the reports which are written while the package.json files are validated. Permissible values are 'json'
+     * (the violations) and 'junit' (each validated package.json as a test case). No report is written by default.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "reports")
+    private String[] reports;
+
+    /**
+     * The directory the reports are written to.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "reportDirectory",
+        defaultValue = "${project.build.directory}/sync-packagejson-version-reports")
+    private File reportDirectory;
+
+    /**
+     * The maximum number of violations which are kept in memory and which are logged at the end of the check. If reports are
+     * enabled, they list all violations anyway.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "retainedViolations", defaultValue = "100")
+    private int retainedViolations = 100;
+
     /**
      * The rule how the version of the pom.xml is evaluated. Permissible values are 'runtime' and 'static'.
      * 
@@ -114,6 +249,85 @@ class CheckMojo extends AbstractMojo {
         return pomVersionEvaluation;
     }
 
+    /**
+     * @see AbstractMojo#validate()
+     */
+    @Override
+    protected void validate() throws Exception {
+        super.validate();
+
+        if (reports != null) {
+            for (String report : reports) {
+                if (!CheckReport.FORMATS.contains(report)) {
+                    throw new IllegalArgumentException(
+                        format("Property 'reports' must contain one of the following values '%s' but contains value '%s'!",
+                            Arrays.toString(CheckReport.FORMATS.toArray()), report));
+                }
+            }
+        }
+
+        if (retainedViolations <= 0) {
+            throw new IllegalArgumentException(
+                format("Property 'retainedViolations' must be greater than 0 but contains value '%d'!", retainedViolations));
+        }
+    }
+
+    /**
+     * @see AbstractMojo#getDiscovery()
+     */
+    @Override
+    protected String getDiscovery() {
+        return discovery;
+    }
+
+    /**
+     * @see AbstractMojo#getPruneDirectories()
+     */
+    @Override
+    protected String[] getPruneDirectories() {
+        return pruneDirectories;
+    }
+
+    /**
+     * @see AbstractMojo#getParallelism()
+     */
+    @Override
+    protected int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @see AbstractMojo#getWorkers()
+     */
+    @Override
+    protected int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @see AbstractMojo#getWorkerThreads()
+     */
+    @Override
+    protected String getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * @see AbstractMojo#getDiscoveryIndex()
+     */
+    @Override
+    protected File getDiscoveryIndex() {
+        return discoveryIndex ? new File(getWorkingDirectory(), "check-discovery.idx") : null;
+    }
+
+    /**
+     * @see AbstractMojo#isSharedDiscovery()
+     */
+    @Override
+    protected boolean isSharedDiscovery() {
+        return sharedDiscovery;
+    }
+
     /**
      * @see AbstractMojo#isSkipped()
      */
@@ -131,8 +345,28 @@ class CheckMojo extends AbstractMojo {
             "Checking if the version of the package.json's found in this project are in sync with the version of the pom.xml [using '%s' evaluation]...",
             pomVersionEvaluation));
 
-        List<PackageJson> packageJsons = collectPackageJsons(includes, excludes);
-        if (packageJsons.isEmpty()) {
+        // the version of the pom.xml is only evaluated if there is at least one package.json to validate.
+        Supplier<String> pomVersion = Suppliers.memoize(() -> evaluatePomVersion(project));
+        HeaderCache headerCache = getHeaderCache();
+        FingerprintStore store = fingerprints ? loadFingerprintStore() : null;
+        AtomicInteger skipped = new AtomicInteger();
+        CheckReport report = openReport();
+        int found;
+        try {
+            found =
+                processPackageJsons(includes, excludes, pj -> check(pj, pomVersion.get(), headerCache, store, skipped, report),
+                    () -> failFast && report.getViolations() > 0);
+            completeReport(report);
+        } finally {
+            // a report which was not completed (because the check was aborted) is closed without its totals.
+            report.close();
+        }
+
+        if (store != null) {
+            saveFingerprintStore(store, skipped.get(), found);
+        }
+
+        if (found == 0) {
             String msg = "No package.json's found in this project!";
             if (failIfNoneFound) {
                 throw new MojoFailureException(msg);
@@ -141,26 +375,88 @@ class CheckMojo extends AbstractMojo {
             return;
         }
 
-        String pomVersion = evaluatePomVersion(project);
-        List<ConstraintViolation> violations = packageJsons //
-            .stream() //
-            .map(pj -> versionValidator.validate(pomVersion, pj, forName(encoding))) //
-            .flatMap(Optional::stream) //
-            .collect(toList());
+        int violations = report.getViolations();
+        if (violations > 0) {
+            output(report);
 
-        if (!violations.isEmpty()) {
-            output(violations);
-
-            boolean singleViolation = violations.size() == 1;
+            boolean singleViolation = violations == 1;
             throw new MojoFailureException(
-                format("%d package.json%s found in this project %s not in sync with the version of the pom.xml!",
-                    violations.size(), singleViolation ? "" : "'s", singleViolation ? "is" : "are"));
+                format("%d package.json%s found in this project %s not in sync with the version of the pom.xml!", violations,
+                    singleViolation ? "" : "'s", singleViolation ? "is" : "are"));
         }
 
         logger.info("Looks fine! :)");
     }
 
-    private void output(List<ConstraintViolation> violations) {
-        violations.forEach(v -> logger.error(v.toString()));
+    @SneakyThrows(IOException.class)
+    private void check(PackageJson pj, String pomVersion, HeaderCache headerCache, FingerprintStore store, AtomicInteger skipped,
+        CheckReport report) {
+        // the fingerprint is taken before the file is read, so a change made in the meantime is noticed by the next build.
+        Entry fingerprint = store != null ? store.fingerprint(pj, pomVersion) : null;
+        if (fingerprint != null && store.isInSync(pj, fingerprint)) {
+            skipped.incrementAndGet();
+            report.passed(pj.getName());
+            return;
+        }
+
+        Optional<ConstraintViolation> violation = versionValidator.validate(pomVersion, pj, forName(encoding), headerCache);
+        if (violation.isPresent()) {
+            report.failed(violation.get());
+        } else {
+            report.passed(pj.getName());
+            if (store != null) {
+                store.update(pj, fingerprint);
+            }
+        }
+    }
+
+    private CheckReport openReport() throws MojoExecutionException {
+        Set<String> formats = reports != null ? ImmutableSet.copyOf(reports) : emptySet();
+        try {
+            return CheckReport.open(reportDirectory != null ? reportDirectory.toPath() : null, formats, retainedViolations);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to create the report of the check!", e);
+        }
+    }
+
+    private static void completeReport(CheckReport report) throws MojoExecutionException {
+        try {
+            report.complete();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to complete the report of the check!", e);
+        }
+    }
+
+    private FingerprintStore loadFingerprintStore() {
+        File file = new File(getWorkingDirectory(), "check-fingerprints.idx");
+        return FingerprintStore.load(file.toPath(), forName(encoding).name(), fingerprintContent, logger);
+    }
+
+    private void saveFingerprintStore(FingerprintStore store, int skipped, int found) {
+        if (found > 0) {
+            logger.info("Skipped %d of %d package.json's through the fingerprint store (hit ratio %d%%).", skipped, found,
+                skipped * 100 / found);
+        }
+        try {
+            store.save();
+        } catch (IOException e) {
+            logger.warn("Unable to save the fingerprint store [%s], the next check needs to read all package.json's again.",
+                e.getMessage());
+        }
+    }
+
+    private void output(CheckReport report) {
+        // the package.json's are validated in the order they are found (and maybe concurrently), so the retained violations are
+        // sorted to keep the output stable.
+        List<ConstraintViolation> retained = report.getRetainedViolations();
+        retained.forEach(v -> logger.error(v.toString()));
+
+        int omitted = report.getViolations() - retained.size();
+        if (omitted > 0) {
+            // only point to the reports if there are any, otherwise the omitted violations are not listed anywhere.
+            String hint = reports != null && reports.length > 0 ? "see the reports of the check"
+                : "raise 'retainedViolations' or enable 'reports' to list all of them";
+            logger.error(format("... and %d more package.json's which are not in sync (%s).", omitted, hint));
+        }
     }
 }
@@ -0,0 +1,388 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin.check;
+
+import static java.util.Comparator.comparing;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MinMaxPriorityQueue;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.check.VersionValidator.ConstraintViolation;
+
+/**
+ * A report of the check which is written while the <code>package.json's</code> are validated.
+ * <p>
+ * Each validated file is streamed into the requested report files right away, so neither the report files nor the number of
+ * validated files are limited by the heap. Only a bounded number of violations is retained in memory for the output at the
+ * end of the check, these are the violations of the files with the lowest names, so the output is stable even if the files
+ * are validated concurrently.
+ * <p>
+ * The totals are only written if the report is {@link #complete() completed}, a report which is closed without being completed
+ * (because the check was aborted) does not carry any totals.
+ * <p>
+ * The report is thread-safe.
+ *
+ * @since 1.4.0
+ */
+class CheckReport implements Closeable {
+
+    /**
+     * The id of the report format which lists the violations as JSON.
+     *
+     * @since 1.4.0
+     */
+    static final String JSON = "json";
+
+    /**
+     * The id of the report format which lists each validated file as a test case in the JUnit XML format.
+     *
+     * @since 1.4.0
+     */
+    static final String JUNIT = "junit";
+
+    /**
+     * The ids of all supported report formats.
+     *
+     * @since 1.4.0
+     */
+    static final Set<String> FORMATS = ImmutableSet.of(JSON, JUNIT);
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final String NAME = "sync-packagejson-version.check";
+
+    private final List<Format> formats;
+    private final MinMaxPriorityQueue<ConstraintViolation> retained;
+    private int checked;
+    private int violations;
+
+    private CheckReport(List<Format> formats, int retention) {
+        this.formats = formats;
+        this.retained =
+            MinMaxPriorityQueue.orderedBy(comparing(ConstraintViolation::getPackageJsonName)).maximumSize(retention).create();
+    }
+
+    /**
+     * Opens a report which is written in the given formats into the given directory.
+     *
+     * @param directory the directory the report files are written to (is only created if at least one format is requested).
+     * @param formats the ids of the requested formats, may be empty.
+     * @param retention the maximum number of violations which are retained in memory.
+     * @return the report.
+     * @throws IOException if a report file cannot be created.
+     * @since 1.4.0
+     */
+    static CheckReport open(Path directory, Collection<String> formats, int retention) throws IOException {
+        List<Format> opened = Lists.newArrayList();
+        try {
+            if (formats.contains(JSON)) {
+                opened.add(new JsonFormat(output(directory, "check-report.json")));
+            }
+            if (formats.contains(JUNIT)) {
+                opened.add(new JunitFormat(directory, "TEST-" + NAME + ".xml"));
+            }
+        } catch (IOException e) {
+            for (Format format : opened) {
+                format.abort();
+            }
+            throw e;
+        }
+        return new CheckReport(opened, retention);
+    }
+
+    /**
+     * Reports a file which is in sync.
+     *
+     * @param name the name of the file.
+     * @throws IOException if the report is not writable.
+     * @since 1.4.0
+     */
+    synchronized void passed(String name) throws IOException {
+        checked++;
+        for (Format format : formats) {
+            format.passed(name);
+        }
+    }
+
+    /**
+     * Reports a file which is not in sync.
+     *
+     * @param violation the violation of the file.
+     * @throws IOException if the report is not writable.
+     * @since 1.4.0
+     */
+    synchronized void failed(ConstraintViolation violation) throws IOException {
+        checked++;
+        violations++;
+        retained.add(violation);
+        for (Format format : formats) {
+            format.failed(violation);
+        }
+    }
+
+    /**
+     * Returns the number of violations which were reported.
+     *
+     * @return the number of violations.
+     * @since 1.4.0
+     */
+    synchronized int getViolations() {
+        return violations;
+    }
+
+    /**
+     * Returns the violations which are retained in memory, sorted by the name of the file.
+     *
+     * @return the retained violations.
+     * @since 1.4.0
+     */
+    synchronized List<ConstraintViolation> getRetainedViolations() {
+        List<ConstraintViolation> sorted = Lists.newArrayList(retained);
+        sorted.sort(comparing(ConstraintViolation::getPackageJsonName));
+        return sorted;
+    }
+
+    /**
+     * Writes the totals into the report files and closes them. Needs to be called once all files are reported.
+     *
+     * @throws IOException if a report file cannot be completed.
+     * @since 1.4.0
+     */
+    synchronized void complete() throws IOException {
+        IOException failure = null;
+        for (Format format : formats) {
+            try {
+                format.complete(checked, violations);
+            } catch (IOException e) {
+                failure = failure != null ? failure : e;
+            }
+        }
+        formats.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Closes the report files which were not {@link #complete() completed} without writing the totals.
+     *
+     * @since 1.4.0
+     */
+    @Override
+    public synchronized void close() {
+        for (Format format : formats) {
+            format.abort();
+        }
+        formats.clear();
+    }
+
+    private static OutputStream output(Path directory, String name) throws IOException {
+        Files.createDirectories(directory);
+        return output(directory.resolve(name));
+    }
+
+    private static OutputStream output(Path file) throws IOException {
+        return new BufferedOutputStream(Files.newOutputStream(file));
+    }
+
+    private interface Format {
+
+        void passed(String name) throws IOException;
+
+        void failed(ConstraintViolation violation) throws IOException;
+
+        void complete(int checked, int violations) throws IOException;
+
+        void abort();
+    }
+
+    /**
+     * Writes the violations as they are found into a JSON document, the totals follow at the end.
+     */
+    private static class JsonFormat implements Format {
+
+        private final JsonGenerator generator;
+
+        JsonFormat(OutputStream output) throws IOException {
+            generator = jsonFactory.createGenerator(output, JsonEncoding.UTF8).useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("violations");
+        }
+
+        @Override
+        public void passed(String name) {
+        }
+
+        @Override
+        public void failed(ConstraintViolation violation) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("packageJson", violation.getPackageJsonName());
+            generator.writeStringField("version", violation.getPackageJsonVersion());
+            generator.writeStringField("pomVersion", violation.getPomVersion());
+            generator.writeEndObject();
+        }
+
+        @Override
+        public void complete(int checked, int violations) throws IOException {
+            try {
+                generator.writeEndArray();
+                generator.writeNumberField("checked", checked);
+                generator.writeNumberField("violated", violations);
+                generator.writeEndObject();
+            } finally {
+                generator.close();
+            }
+        }
+
+        @Override
+        public void abort() {
+            try {
+                generator.close();
+            } catch (IOException e) {
+                // nothing left to do about it.
+            }
+        }
+    }
+
+    /**
+     * Writes each validated file as a test case into a JUnit XML document. The test suite carries the totals, which are only
+     * known at the end, so the test cases are streamed into a temporary file first and are copied into the document once the
+     * report is completed. The document is not written at all if the report is not completed.
+     */
+    private static class JunitFormat implements Format {
+
+        private final Path file;
+        private final Path cases;
+        private final Instant timestamp;
+        private final OutputStream output;
+        private final XMLStreamWriter writer;
+
+        JunitFormat(Path directory, String name) throws IOException {
+            Files.createDirectories(directory);
+            file = directory.resolve(name);
+            // a document of an earlier check must not be taken for the one of this check if this check is aborted.
+            Files.deleteIfExists(file);
+            cases = Files.createTempFile(directory, name, ".tmp");
+            timestamp = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+            output = output(cases);
+            try {
+                writer = writer(output);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        @Override
+        public void passed(String name) throws IOException {
+            try {
+                writer.writeEmptyElement("testcase");
+                writer.writeAttribute("classname", NAME);
+                writer.writeAttribute("name", name);
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void failed(ConstraintViolation violation) throws IOException {
+            try {
+                writer.writeStartElement("testcase");
+                writer.writeAttribute("classname", NAME);
+                writer.writeAttribute("name", violation.getPackageJsonName());
+                writer.writeEmptyElement("failure");
+                writer.writeAttribute("message", violation.toString());
+                writer.writeAttribute("type", "VersionMismatch");
+                writer.writeEndElement();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void complete(int checked, int violations) throws IOException {
+            try {
+                close(writer, output);
+                try (OutputStream document = output(file)) {
+                    XMLStreamWriter suite = writer(document);
+                    suite.writeStartDocument("UTF-8", "1.0");
+                    suite.writeStartElement("testsuite");
+                    suite.writeAttribute("name", NAME);
+                    suite.writeAttribute("tests", String.valueOf(checked));
+                    suite.writeAttribute("failures", String.valueOf(violations));
+                    suite.writeAttribute("errors", "0");
+                    suite.writeAttribute("skipped", "0");
+                    suite.writeAttribute("timestamp", timestamp.toString());
+                    // closes the start tag, so the test cases can be copied behind it.
+                    suite.writeCharacters("");
+                    suite.flush();
+                    Files.copy(cases, document);
+                    suite.writeEndElement();
+                    suite.writeEndDocument();
+                    suite.close();
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            } finally {
+                Files.deleteIfExists(cases);
+            }
+        }
+
+        @Override
+        public void abort() {
+            try {
+                output.close();
+                Files.deleteIfExists(cases);
+            } catch (IOException e) {
+                // nothing left to do about it.
+            }
+        }
+
+        private static XMLStreamWriter writer(OutputStream output) throws IOException {
+            try {
+                return XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private static void close(XMLStreamWriter writer, OutputStream output) throws IOException, XMLStreamException {
+            try {
+                writer.close();
+            } finally {
+                output.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin.check;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJson;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A persistent store which remembers the <code>package.json's</code> that were proven to be in sync with the version of the
+ * <code>pom.xml</code>.
+ * <p>
+ * Each file is remembered through its fingerprint (the size, the last modification time and optionally a hash of the content)
+ * together with the version of the <code>pom.xml</code> it was validated against. A file does not need to be validated again
+ * as long as its fingerprint and the version of the <code>pom.xml</code> are unchanged. The store is bound to a key which
+ * reflects the configuration it was built with and is discarded if the key changes.
+ * <p>
+ * The store is thread-safe, so the files can be looked up and recorded while being validated concurrently.
+ *
+ * @since 1.4.0
+ */
+class FingerprintStore {
+
+    private static final ObjectMapper objectMapper = objectMapper();
+
+    private final Path file;
+    private final String key;
+    private final boolean hashContent;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    private final long createdAt = System.currentTimeMillis();
+
+    private FingerprintStore(Path file, String key, boolean hashContent, Map<String, Entry> previous) {
+        this.file = file;
+        this.key = key;
+        this.hashContent = hashContent;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the store from the given file. Returns an empty store if the file does not exist, is not readable or was built with
+     * a different key.
+     *
+     * @param file the file the store is kept in.
+     * @param key the key which reflects the configuration the store is built with.
+     * @param hashContent if the fingerprint of a file should contain a hash of its content.
+     * @param logger the logger to report why an existing store is not used.
+     * @return the loaded store.
+     * @since 1.4.0
+     */
+    static FingerprintStore load(Path file, String key, boolean hashContent, Logger logger) {
+        Map<String, Entry> entries = Maps.newHashMap();
+        if (Files.isRegularFile(file)) {
+            try {
+                Content content = objectMapper.readValue(file.toFile(), Content.class);
+                if (key.equals(content.getKey()) && content.getFiles() != null) {
+                    entries = content.getFiles();
+                } else {
+                    logger.debug("Discarding the fingerprint store '%s' because the configuration has changed.", file);
+                }
+            } catch (IOException e) {
+                logger.debug("Discarding the fingerprint store '%s' because it is not readable [%s].", file, e.getMessage());
+            }
+        }
+        return new FingerprintStore(file, key, hashContent, entries);
+    }
+
+    /**
+     * Takes the fingerprint of the given <code>package.json</code>. The fingerprint has to be taken before the file is
+     * validated, so that a change made during the validation is noticed by the next build.
+     *
+     * @param packageJson the <code>package.json</code>.
+     * @param pomVersion the version of the <code>pom.xml</code> the file is validated against.
+     * @return the fingerprint of the file.
+     * @throws IOException if the attributes or the content of the file are not readable.
+     * @since 1.4.0
+     */
+    Entry fingerprint(PackageJson packageJson, String pomVersion) throws IOException {
+        Path path = packageJson.getFile().toPath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String hash =
+            hashContent ? com.google.common.io.Files.asByteSource(path.toFile()).hash(Hashing.murmur3_128()).toString() : null;
+        return new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), hash, pomVersion);
+    }
+
+    /**
+     * Returns if the given <code>package.json</code> was proven to be in sync by a previous build and is unchanged since then.
+     * A file that is in sync is kept in the store if it is saved.
+     *
+     * @param packageJson the <code>package.json</code>.
+     * @param fingerprint the current fingerprint of the file.
+     * @return {@code true} if the file does not need to be validated again, otherwise {@code false}.
+     * @since 1.4.0
+     */
+    boolean isInSync(PackageJson packageJson, Entry fingerprint) {
+        String name = packageJson.getName();
+        if (fingerprint.equals(previous.get(name))) {
+            current.put(name, fingerprint);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records that the given <code>package.json</code> was proven to be in sync, so that it is part of the store if it is saved.
+     *
+     * @param packageJson the <code>package.json</code>.
+     * @param fingerprint the fingerprint of the file which was taken before it was validated.
+     * @since 1.4.0
+     */
+    void update(PackageJson packageJson, Entry fingerprint) {
+        current.put(packageJson.getName(), fingerprint);
+    }
+
+    /**
+     * Saves the files recorded since the store was loaded. Without a hash of the content, files which were modified around the
+     * time they were validated are left out because a change in the same tick of the file system clock would otherwise go
+     * unnoticed.
+     *
+     * @throws IOException if the store cannot be written.
+     * @since 1.4.0
+     */
+    void save() throws IOException {
+        Map<String, Entry> files = Maps.filterValues(current, e -> e.getHash() != null || e.getLastModified() < createdAt - 2000);
+
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        objectMapper.writeValue(temp.toFile(), new Content(key, new TreeMap<>(files)));
+        Files.move(temp, file, REPLACE_EXISTING);
+    }
+
+    private static ObjectMapper objectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.disable(FAIL_ON_UNKNOWN_PROPERTIES);
+        return objectMapper;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Entry {
+
+        private long size;
+        private long lastModified;
+        private String hash;
+        private String pomVersion;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    private static class Content {
+
+        private String key;
+        private Map<String, Entry> files;
+    }
+}
@@ -15,16 +15,27 @@
  */
 package de.ingogriebsch.maven.sync.packagejson.version.plugin.check;
 
-import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.HeaderCache;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.HeaderCache.Fingerprint;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJson;
-import lombok.Data;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonReader;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.VersionLocator;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.VersionLocator.Location;
 import lombok.SneakyThrows;
 import lombok.Value;
 
@@ -36,7 +47,6 @@ import lombok.Value;
  */
 class VersionValidator {
 
-    private static final ObjectMapper objectMapper = objectMapper();
     private final Logger logger;
 
     VersionValidator(Logger logger) {
@@ -45,6 +55,11 @@ class VersionValidator {
 
     /**
      * Checks if the version of the given <code>package.json</code> is valid (means is the same as the given version).
+     * <p>
+     * The version of an npm lockfile is only valid if both the top-level version and the version of the root package
+     * (<code>packages[""].version</code>) are the same as the given version.
+     * <p>
+     * The file is read in the given encoding unless it starts with a byte order mark, see {@link PackageJsonReader}.
      * 
      * @param pomVersion the version of the <code>pom.xml</code>
      * @param packageJson the <code>package.json</code> that is validated.
@@ -54,10 +69,33 @@ class VersionValidator {
      * @since 1.0.0
      */
     Optional<ConstraintViolation> validate(String pomVersion, PackageJson packageJson, Charset encoding) {
-        String version = read(packageJson).getVersion();
-        logger.debug("Read version '%s' from '%s'.", version, packageJson);
+        return validate(pomVersion, packageJson, encoding, null);
+    }
+
+    /**
+     * Checks if the version of the given <code>package.json</code> is valid (means is the same as the given version).
+     * <p>
+     * The file is not read at all if the given cache contains the versions of the unchanged file, e.g. because the file was
+     * synchronized or checked before in the same session. Otherwise the versions read are recorded in the cache. The cache is
+     * only used for files which are interpreted as UTF-8 (like it is through the sync).
+     * 
+     * @param pomVersion the version of the <code>pom.xml</code>
+     * @param packageJson the <code>package.json</code> that is validated.
+     * @param encoding the encoding in which the <code>package.json</code> is interpreted.
+     * @param headerCache the cache of the versions or {@code null} if the file is always read.
+     * @return an {@link Optional} that is either empty (if the version is valid) or contains a {@link ConstraintViolation} (if
+     *         the version is not valid).
+     * @since 1.4.0
+     */
+    Optional<ConstraintViolation> validate(String pomVersion, PackageJson packageJson, Charset encoding,
+        HeaderCache headerCache) {
+        List<String> versions = read(packageJson, encoding, UTF_8.equals(encoding) ? headerCache : null);
+        logger.debug("Read version(s) %s from '%s'.", versions, packageJson);
 
-        if (!version.equals(pomVersion)) {
+        // a file without a version is not in sync either.
+        String version =
+            versions.stream().filter(v -> !v.equals(pomVersion)).findFirst().orElse(versions.isEmpty() ? null : pomVersion);
+        if (!Objects.equals(version, pomVersion)) {
             String name = packageJson.getName();
             logger.debug("Version '%s' of '%s' does not match against version '%s' of the pom.xml.", version, name, pomVersion);
             return Optional.of(ConstraintViolation.of(name, version, pomVersion));
@@ -66,14 +104,30 @@ class VersionValidator {
     }
 
     @SneakyThrows(IOException.class)
-    private static PackageJsonContent read(PackageJson packageJson) {
-        return objectMapper.readValue(packageJson.getFile(), PackageJsonContent.class);
+    private List<String> read(PackageJson packageJson, Charset encoding, HeaderCache headerCache) {
+        Path file = packageJson.getFile().toPath();
+        Fingerprint fingerprint = headerCache != null ? HeaderCache.fingerprint(file) : null;
+        List<Location> locations = headerCache != null ? headerCache.get(file, emptySet(), fingerprint) : null;
+        if (locations != null) {
+            logger.debug("Took the version(s) of '%s' from the header cache.", packageJson);
+        } else {
+            locations = locate(packageJson, encoding);
+            if (headerCache != null) {
+                headerCache.put(file, emptySet(), fingerprint, locations);
+            }
+        }
+        return locations.stream().map(Location::getVersion).collect(toList());
     }
 
-    private static ObjectMapper objectMapper() {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.disable(FAIL_ON_UNKNOWN_PROPERTIES);
-        return objectMapper;
+    private static List<Location> locate(PackageJson packageJson, Charset encoding) throws IOException {
+        // the parser stops right behind the version(s), the rest of the file is neither tokenized nor mapped.
+        try (JsonParser parser = PackageJsonReader.open(packageJson.getFile().toPath(), encoding)) {
+            if (packageJson.isLockfile()) {
+                return VersionLocator.locateLockfile(parser);
+            }
+            Location location = VersionLocator.locate(parser);
+            return location != null ? singletonList(location) : emptyList();
+        }
     }
 
     /**
@@ -101,10 +155,4 @@ class VersionValidator {
                 .toString();
         }
     }
-
-    @Data
-    private static class PackageJsonContent {
-
-        private String version;
-    }
 }
@@ -0,0 +1,126 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin.sync;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableSet;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger;
+
+/**
+ * A component that decides how the rewritten <code>package.json's</code> are flushed to the storage device.
+ * <p>
+ * With policy {@link #NONE} nothing is flushed explicitly. With policy {@link #FILE} the content of each file is flushed before
+ * it replaces the original and the directory is flushed right after the replacement. With policy {@link #DIRECTORY} the
+ * content of each file is flushed as well, but each directory is flushed only once after all files are written.
+ *
+ * @since 1.4.0
+ */
+class FsyncPolicy {
+
+    /**
+     * The id of the policy which does not flush anything explicitly.
+     *
+     * @since 1.4.0
+     */
+    static final String NONE = "none";
+
+    /**
+     * The id of the policy which flushes each file and its directory.
+     *
+     * @since 1.4.0
+     */
+    static final String FILE = "file";
+
+    /**
+     * The id of the policy which flushes each file but flushes the directories only once at the end.
+     *
+     * @since 1.4.0
+     */
+    static final String DIRECTORY = "directory";
+
+    /**
+     * The ids of all supported policies.
+     *
+     * @since 1.4.0
+     */
+    static final Set<String> IDS = ImmutableSet.of(NONE, FILE, DIRECTORY);
+
+    private final String id;
+    private final Logger logger;
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+
+    FsyncPolicy(String id, Logger logger) {
+        this.id = id;
+        this.logger = logger;
+    }
+
+    /**
+     * Flushes the content of the given file if demanded by the policy.
+     *
+     * @param channel the channel of the file which was written.
+     * @throws IOException if the content cannot be flushed.
+     * @since 1.4.0
+     */
+    void written(FileChannel channel) throws IOException {
+        if (!NONE.equals(id)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Flushes or remembers the directory of the given file if demanded by the policy.
+     *
+     * @param file the file which was replaced.
+     * @since 1.4.0
+     */
+    void replaced(Path file) {
+        Path directory = file.toAbsolutePath().getParent();
+        if (FILE.equals(id)) {
+            flush(directory);
+        } else if (DIRECTORY.equals(id)) {
+            directories.add(directory);
+        }
+    }
+
+    /**
+     * Flushes the directories which were remembered since the last call.
+     *
+     * @since 1.4.0
+     */
+    void flush() {
+        if (!directories.isEmpty()) {
+            logger.debug("Flushing %d directories.", directories.size());
+            directories.forEach(this::flush);
+            directories.clear();
+        }
+    }
+
+    private void flush(Path directory) {
+        // not every platform allows to open a directory, a failed flush is not worth failing the build for.
+        try (FileChannel channel = FileChannel.open(directory, READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Unable to flush the directory '%s' [%s].", directory, e.getMessage());
+        }
+    }
+}
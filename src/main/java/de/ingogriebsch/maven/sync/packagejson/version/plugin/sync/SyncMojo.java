@@ -17,13 +17,29 @@ package de.ingogriebsch.maven.sync.packagejson.version.plugin.sync;
 
 import static java.lang.String.format;
 import static java.nio.charset.Charset.forName;
+import static java.util.Comparator.comparing;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.inject.Singleton;
 
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.AbstractMojo;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJson;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.sync.VersionWriter.Options;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.sync.VersionWriter.Protocol;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
@@ -35,7 +51,7 @@ import org.apache.maven.plugins.annotations.Parameter;
  * @since 1.0.0
  */
 @Singleton
-@Mojo(name = "sync", requiresProject = true, requiresDirectInvocation = true)
+@Mojo(name = "sync", requiresProject = true, requiresDirectInvocation = true, threadSafe = true)
 class SyncMojo extends AbstractMojo {
 
     private static final String PROPERTY_PREFIX = "sync-packagejson-version.sync.";
@@ -71,6 +87,117 @@ class SyncMojo extends AbstractMojo {
     @Parameter(property = PROPERTY_PREFIX + "excludes")
     private String[] excludes;
 
+    /**
+     * The rule how the package.json files are discovered. Permissible values are 'filesystem', 'workspaces' and 'git'. If set
+     * to 'workspaces', the includes are applied to the projects root directory and to each workspace member declared in the
+     * package.json or the pnpm-workspace.yaml of the projects root directory. If set to 'git', only the files tracked in the
+     * index of the git repository are taken into account (falling back to 'filesystem' if there is no repository).
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "discovery", defaultValue = "filesystem")
+    private String discovery = "filesystem";
+
+    /**
+     * The names of the directories which are not descended while collecting the package.json files, independent of the
+     * includes and excludes.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "pruneDirectories", defaultValue = "node_modules,.git,target")
+    private String[] pruneDirectories;
+
+    /**
+     * The number of threads which are used to collect the package.json files. A value greater than 1 walks the directories in
+     * parallel. It has no effect if the discovery index is used, the index is walked sequentially.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "parallelism", defaultValue = "1")
+    private int parallelism = 1;
+
+    /**
+     * The number of threads which are used to synchronize the package.json files. A value greater than 1 rewrites different
+     * files concurrently, the same file is never written by two threads at the same time (not even by two modules of a
+     * parallel build).
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "workers", defaultValue = "1")
+    private int workers = 1;
+
+    /**
+     * The kind of threads which are used to synchronize the package.json files. Permissible values are 'platform' and
+     * 'virtual'. Virtual threads suit the I/O bound synchronization and are used if the JDK supports them (Java 21 and
+     * later), otherwise platform threads are used.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "workerThreads", defaultValue = "platform")
+    private String workerThreads = PLATFORM_THREADS;
+
+    /**
+     * Flag to control if an index of the walked directories is kept in the build directory, so that unchanged directories do not
+     * need to be listed again while collecting the package.json files. The index is walked sequentially, so the parallelism is
+     * ignored if the index is used.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "discoveryIndex", defaultValue = "false")
+    private boolean discoveryIndex = false;
+
+    /**
+     * Flag to control if the package.json files are discovered once for all modules of the reactor. If enabled, each file is
+     * only reported by the module with the nearest base directory among the modules which execute the same goal, so a parent
+     * module does not report the files of its child modules (unless a child module does not execute the goal).
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "sharedDiscovery", defaultValue = "false")
+    private boolean sharedDiscovery = false;
+
+    /**
+     * The rule how the rewritten package.json files are flushed to the storage device. Permissible values are 'none' (nothing
+     * is flushed explicitly), 'file' (each file and its directory are flushed after the file is rewritten) and 'directory'
+     * (each file is flushed, each directory is flushed only once after all files are rewritten).
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "fsync", defaultValue = "none")
+    private String fsync = FsyncPolicy.NONE;
+
+    /**
+     * Flag to control if the time stamps, the owner and the group of a rewritten package.json file are restored. A file whose
+     * content would not change is never rewritten, independent of this flag. Be aware that tools which detect changes through
+     * the modification time of a file do not notice a rewritten file if this flag is enabled.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "preserveFileAttributes", defaultValue = "false")
+    private boolean preserveFileAttributes = false;
+
+    /**
+     * Flag to control if the entries of the workspace members in an npm lockfile (e.g. <code>packages["packages/a"]</code>) are
+     * synchronized as well. A workspace member is each package.json found below the directory of the lockfile, so the includes
+     * need to match the package.json files of the workspace members.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "lockfileWorkspaceMembers", defaultValue = "false")
+    private boolean lockfileWorkspaceMembers = false;
+
+    /**
+     * Flag to control if the package.json files are synchronized all at once or not at all. If enabled, the new content of all
+     * files is staged first and the files are only replaced if all of them could be staged. A journal in the build directory
+     * keeps track of the staged files, so the next execution with this flag enabled rolls back or finishes an interrupted
+     * synchronization. The staged files are flushed to the storage device before the files are replaced, whatever the fsync
+     * rule says.
+     * 
+     * @since 1.4.0
+     */
+    @Parameter(property = PROPERTY_PREFIX + "transactional", defaultValue = "false")
+    private boolean transactional = false;
+
     /**
      * The rule how the version of the pom.xml is evaluated. Legal values are 'runtime' and 'static'.
      * 
@@ -91,6 +218,76 @@ class SyncMojo extends AbstractMojo {
         return pomVersionEvaluation;
     }
 
+    /**
+     * @see AbstractMojo#validate()
+     */
+    @Override
+    protected void validate() throws Exception {
+        super.validate();
+
+        if (!FsyncPolicy.IDS.contains(fsync)) {
+            throw new IllegalArgumentException(
+                format("Property 'fsync' must contain one of the following values '%s' but contains value '%s'!",
+                    Arrays.toString(FsyncPolicy.IDS.toArray()), fsync));
+        }
+    }
+
+    /**
+     * @see AbstractMojo#getDiscovery()
+     */
+    @Override
+    protected String getDiscovery() {
+        return discovery;
+    }
+
+    /**
+     * @see AbstractMojo#getPruneDirectories()
+     */
+    @Override
+    protected String[] getPruneDirectories() {
+        return pruneDirectories;
+    }
+
+    /**
+     * @see AbstractMojo#getParallelism()
+     */
+    @Override
+    protected int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @see AbstractMojo#getWorkers()
+     */
+    @Override
+    protected int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @see AbstractMojo#getWorkerThreads()
+     */
+    @Override
+    protected String getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * @see AbstractMojo#getDiscoveryIndex()
+     */
+    @Override
+    protected File getDiscoveryIndex() {
+        return discoveryIndex ? new File(getWorkingDirectory(), "sync-discovery.idx") : null;
+    }
+
+    /**
+     * @see AbstractMojo#isSharedDiscovery()
+     */
+    @Override
+    protected boolean isSharedDiscovery() {
+        return sharedDiscovery;
+    }
+
     /**
      * @see AbstractMojo#isSkipped()
      */
@@ -108,20 +305,99 @@ class SyncMojo extends AbstractMojo {
             "Synchronizing the version of the package.json's found in this project with the version of the pom.xml [using '%s' evaluation]...",
             pomVersionEvaluation));
 
-        List<PackageJson> packageJsons = collectPackageJsons(includes, excludes);
-        if (packageJsons.isEmpty()) {
+        // the version of the pom.xml is only evaluated if there is at least one package.json to synchronize.
+        Supplier<String> pomVersion = Suppliers.memoize(() -> evaluatePomVersion(project));
+        FsyncPolicy fsyncPolicy = new FsyncPolicy(fsync, logger);
+        Transaction transaction = transactional ? begin(fsyncPolicy) : null;
+        Options options = Options.of(fsyncPolicy).withPreserveFileAttributes(preserveFileAttributes).withTransaction(transaction)
+            .withHeaderCache(getHeaderCache());
+        // in transactional mode the files are only reported once they are replaced through the commit.
+        List<Protocol> staged = Collections.synchronizedList(Lists.newArrayList());
+        Consumer<Protocol> protocols = transaction != null ? staged::add : this::output;
+        int found;
+        try {
+            // the lockfiles are deferred until all workspace members are known.
+            List<PackageJson> lockfiles = Collections.synchronizedList(Lists.newArrayList());
+            Set<String> names = ConcurrentHashMap.newKeySet();
+            found = processPackageJsons(includes, excludes, pj -> {
+                if (lockfileWorkspaceMembers && pj.isLockfile()) {
+                    lockfiles.add(pj);
+                } else {
+                    names.add(pj.getName());
+                    synchronize(pomVersion.get(), pj, options, protocols);
+                }
+            });
+            synchronizeLockfiles(pomVersion, lockfiles, names, options, protocols);
+            if (transaction != null) {
+                commit(transaction);
+                staged.stream().sorted(comparing(Protocol::getPackageJsonName)).forEach(this::output);
+            }
+        } catch (Throwable e) {
+            // whatever fails (even an error), the staged files must not outlive the synchronization.
+            if (transaction != null) {
+                transaction.rollback();
+            }
+            throw e;
+        } finally {
+            fsyncPolicy.flush();
+        }
+        if (found == 0) {
             throw new MojoFailureException("No package.json's found in this project!");
         }
 
-        String pomVersion = evaluatePomVersion(project);
-        packageJsons //
-            .stream() //
-            .forEach(pj -> synchronize(pomVersion, pj));
-
         logger.info("Done! :)");
     }
 
-    private void synchronize(String pomVersion, PackageJson packageJson) {
-        versionWriter.write(pomVersion, packageJson, forName(encoding)).ifPresent(p -> logger.info("  " + p.toString()));
+    private void synchronizeLockfiles(Supplier<String> pomVersion, List<PackageJson> lockfiles, Set<String> names,
+        Options options, Consumer<Protocol> protocols) throws MojoExecutionException {
+        try {
+            lockfiles.forEach(
+                pj -> synchronize(pomVersion.get(), pj, options.withWorkspaceMembers(workspaceMembers(pj, names)), protocols));
+        } catch (Exception e) {
+            // the writer throws its I/O exceptions sneaky, they are reported the same way as the ones of the other files.
+            Throwables.throwIfUnchecked(e);
+            throw new MojoExecutionException("Caught exception while processing the package.json's!", e);
+        }
+    }
+
+    private void synchronize(String pomVersion, PackageJson packageJson, Options options, Consumer<Protocol> protocols) {
+        versionWriter.write(pomVersion, packageJson, forName(encoding), options).ifPresent(protocols);
+    }
+
+    private void output(Protocol protocol) {
+        logger.info("  " + protocol.toString());
+    }
+
+    private Transaction begin(FsyncPolicy fsyncPolicy) throws MojoExecutionException {
+        Path journal = new File(getWorkingDirectory(), "sync-transaction.journal").toPath();
+        try {
+            return Transaction.begin(journal, fsyncPolicy, logger);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Caught exception while recovering an interrupted synchronization!", e);
+        }
+    }
+
+    private static void commit(Transaction transaction) throws MojoExecutionException {
+        try {
+            transaction.commit();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Caught exception while committing the synchronization!", e);
+        }
+    }
+
+    private Set<String> workspaceMembers(PackageJson lockfile, Set<String> names) {
+        // the packages of a lockfile are keyed through their path relative to the directory of the lockfile.
+        String lockfileName = lockfile.getName();
+        String prefix = lockfileName.substring(0, lockfileName.lastIndexOf('/') + 1);
+        String suffix = "/package.json";
+
+        Set<String> members = Sets.newHashSet();
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.endsWith(suffix) && name.length() > prefix.length() + suffix.length()) {
+                members.add(name.substring(prefix.length(), name.length() - suffix.length()));
+            }
+        }
+        logger.debug("Synchronizing the workspace members %s of '%s'.", members, lockfileName);
+        return members;
     }
 }
@@ -0,0 +1,310 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin.sync;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger;
+
+/**
+ * A transaction that replaces a set of files all at once or not at all.
+ * <p>
+ * The new content of each file is staged into a temporary file next to the original. Only if all files are staged, the
+ * temporary files replace the originals. A journal keeps track of the staged files, so the next run is able to roll back a
+ * transaction that was interrupted while staging (by deleting the temporary files) or to finish a transaction that was
+ * interrupted while committing (by replacing the remaining originals).
+ * <p>
+ * The journal is a sequence of records, each record starts with its type. A staged file is recorded through the path of the
+ * temporary file and the path of the original before the temporary file is created. The commit is recorded once all files are
+ * staged, the journal is flushed to the storage device and deleted after all files are replaced.
+ * <p>
+ * The staged files and their directories are flushed to the storage device before the commit is recorded, whatever the
+ * {@link FsyncPolicy} says. Otherwise a commit could be durable while the staged files are not, and the recovery after a power
+ * loss would replace the originals through empty or partial files.
+ *
+ * @since 1.4.0
+ */
+class Transaction {
+
+    private static final int STAGED = 'S';
+    private static final int COMMITTED = 'C';
+
+    private final Path journal;
+    private final FsyncPolicy fsyncPolicy;
+    private final Logger logger;
+    private final Flusher flusher;
+    private final Map<Path, Path> staged = Maps.newLinkedHashMap();
+    private FileOutputStream journalStream;
+    private DataOutputStream journalOutput;
+    private boolean completed;
+    private boolean committing;
+
+    private Transaction(Path journal, FsyncPolicy fsyncPolicy, Logger logger, Flusher flusher) {
+        this.journal = journal;
+        this.fsyncPolicy = fsyncPolicy;
+        this.logger = logger;
+        this.flusher = flusher;
+    }
+
+    /**
+     * Begins a new transaction. A transaction that was interrupted before is rolled back or finished first.
+     *
+     * @param journal the file which keeps track of the transaction.
+     * @param fsyncPolicy the policy that decides how the replaced files are flushed to the storage device.
+     * @param logger the logger.
+     * @return the transaction.
+     * @throws IOException if the journal is not writable or if an interrupted transaction cannot be recovered.
+     * @since 1.4.0
+     */
+    static Transaction begin(Path journal, FsyncPolicy fsyncPolicy, Logger logger) throws IOException {
+        return begin(journal, fsyncPolicy, logger, Transaction::flush);
+    }
+
+    /**
+     * Begins a new transaction which flushes the staged files through the given flusher. A transaction that was interrupted
+     * before is rolled back or finished first.
+     *
+     * @param journal the file which keeps track of the transaction.
+     * @param fsyncPolicy the policy that decides how the replaced files are flushed to the storage device.
+     * @param logger the logger.
+     * @param flusher the flusher which flushes the staged files and their directories before the commit is recorded.
+     * @return the transaction.
+     * @throws IOException if the journal is not writable or if an interrupted transaction cannot be recovered.
+     * @since 1.4.0
+     */
+    static Transaction begin(Path journal, FsyncPolicy fsyncPolicy, Logger logger, Flusher flusher) throws IOException {
+        recover(journal, logger);
+        return new Transaction(journal, fsyncPolicy, logger, flusher);
+    }
+
+    /**
+     * Rolls back or finishes the transaction that was interrupted while being tracked through the given journal.
+     *
+     * @param journal the file which keeps track of the transaction.
+     * @param logger the logger.
+     * @throws IOException if the journal is not readable or if a file cannot be replaced or deleted.
+     * @since 1.4.0
+     */
+    static void recover(Path journal, Logger logger) throws IOException {
+        if (!Files.isRegularFile(journal)) {
+            return;
+        }
+
+        Map<Path, Path> staged = Maps.newLinkedHashMap();
+        boolean committed = false;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal)))) {
+            int type;
+            while ((type = input.read()) == STAGED) {
+                staged.put(Paths.get(input.readUTF()), Paths.get(input.readUTF()));
+            }
+            committed = type == COMMITTED;
+        } catch (EOFException e) {
+            // the last record was not written completely, the transaction was interrupted while staging.
+        }
+
+        if (committed) {
+            logger.warn("Finishing the interrupted synchronization of %d package.json's.", staged.size());
+            for (Map.Entry<Path, Path> entry : staged.entrySet()) {
+                if (Files.exists(entry.getKey())) {
+                    replace(entry.getKey(), entry.getValue());
+                }
+            }
+        } else {
+            logger.warn("Rolling back the interrupted synchronization of %d package.json's.", staged.size());
+            for (Path temp : staged.keySet()) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        Files.delete(journal);
+    }
+
+    /**
+     * Stages a new content for the given file.
+     *
+     * @param file the file which is replaced through the new content when the transaction is committed.
+     * @return the path of the temporary file which has to be created and to be filled with the new content.
+     * @throws IOException if the journal is not writable.
+     * @since 1.4.0
+     */
+    synchronized Path stage(Path file) throws IOException {
+        if (completed) {
+            throw new IllegalStateException("The transaction is already completed!");
+        }
+
+        Path temp = file.resolveSibling("." + file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        DataOutputStream output = journalOutput();
+        output.write(STAGED);
+        output.writeUTF(temp.toAbsolutePath().toString());
+        output.writeUTF(file.toAbsolutePath().toString());
+        // the record needs to be written before the temporary file exists, otherwise the file may remain if the build dies.
+        output.flush();
+
+        staged.put(temp, file);
+        return temp;
+    }
+
+    /**
+     * Replaces all files through their staged content.
+     *
+     * @throws IOException if the journal is not writable or if a file cannot be replaced (the journal remains in this case, so
+     *         the next run finishes the transaction).
+     * @since 1.4.0
+     */
+    synchronized void commit() throws IOException {
+        completed = true;
+        if (staged.isEmpty()) {
+            close();
+            return;
+        }
+
+        flushStaged();
+        journalOutput.write(COMMITTED);
+        journalOutput.flush();
+        journalStream.getFD().sync();
+        committing = true;
+        close();
+
+        logger.debug("Committing %d staged package.json's.", staged.size());
+        for (Map.Entry<Path, Path> entry : staged.entrySet()) {
+            replace(entry.getKey(), entry.getValue());
+            fsyncPolicy.replaced(entry.getValue());
+        }
+        Files.delete(journal);
+    }
+
+    /**
+     * Discards the staged content of all files, the files remain unchanged. Nothing is discarded if the commit already started,
+     * the next run finishes the transaction in this case.
+     *
+     * @since 1.4.0
+     */
+    synchronized void rollback() {
+        completed = true;
+        if (committing) {
+            return;
+        }
+        logger.debug("Rolling back %d staged package.json's.", staged.size());
+        try {
+            close();
+            for (Path temp : staged.keySet()) {
+                Files.deleteIfExists(temp);
+            }
+            Files.deleteIfExists(journal);
+        } catch (IOException e) {
+            // the journal remains if not all of the temporary files are deleted, so the next run is able to do so.
+            logger.warn("Unable to roll back the staged package.json's [%s]!", e.getMessage());
+        }
+    }
+
+    private void flushStaged() throws IOException {
+        logger.debug("Flushing %d staged package.json's.", staged.size());
+        Set<Path> directories = Sets.newLinkedHashSet();
+        for (Path temp : staged.keySet()) {
+            flusher.flush(temp, false);
+            directories.add(temp.toAbsolutePath().getParent());
+        }
+        for (Path directory : directories) {
+            flusher.flush(directory, true);
+        }
+    }
+
+    private static void flush(Path path, boolean directory) throws IOException {
+        if (!directory) {
+            try (FileChannel channel = FileChannel.open(path, WRITE)) {
+                channel.force(true);
+            }
+            return;
+        }
+        // not every platform allows to open a directory, the staged files themselves are flushed in any case.
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // nothing left to do about it.
+        }
+    }
+
+    private DataOutputStream journalOutput() throws IOException {
+        if (journalOutput == null) {
+            Files.createDirectories(journal.toAbsolutePath().getParent());
+            journalStream = new FileOutputStream(journal.toFile());
+            journalOutput = new DataOutputStream(new BufferedOutputStream(journalStream));
+        }
+        return journalOutput;
+    }
+
+    private void close() throws IOException {
+        if (journalOutput != null) {
+            journalOutput.close();
+            journalOutput = null;
+        }
+    }
+
+    /**
+     * Replaces the target through the source, atomically if the file system supports it.
+     *
+     * @param source the file which replaces the target.
+     * @param target the file which is replaced.
+     * @throws IOException if the target cannot be replaced.
+     * @since 1.4.0
+     */
+    static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Flushes a staged file or a directory to the storage device.
+     *
+     * @since 1.4.0
+     */
+    @FunctionalInterface
+    interface Flusher {
+
+        /**
+         * Flushes the given file or directory.
+         *
+         * @param path the path of the file or directory.
+         * @param directory if the path denotes a directory.
+         * @throws IOException if a file cannot be flushed.
+         * @since 1.4.0
+         */
+        void flush(Path path, boolean directory) throws IOException;
+    }
+}
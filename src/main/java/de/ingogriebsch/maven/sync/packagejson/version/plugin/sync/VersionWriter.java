@@ -15,25 +15,54 @@
  */
 package de.ingogriebsch.maven.sync.packagejson.version.plugin.sync;
 
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
 import static java.util.Optional.empty;
-import static java.util.regex.Pattern.DOTALL;
 
-import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
-
-import java.io.File;
+import java.io.CharConversionException;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.json.UTF8StreamJsonParser;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.HeaderCache;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.HeaderCache.Fingerprint;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJson;
-import lombok.Data;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonReader;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonReader.Encoding;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.VersionLocator;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.VersionLocator.Location;
 import lombok.SneakyThrows;
 import lombok.Value;
-import org.apache.commons.io.FileUtils;
+import lombok.With;
 
 /**
  * A component that overwrites the version of a <code>package.json</code> with the version of the <code>pom.xml</code>.
@@ -42,8 +71,9 @@ import org.apache.commons.io.FileUtils;
  */
 class VersionWriter {
 
-    private static final Pattern pattern = Pattern.compile("^.*?\"version\"\\s?:\\s?\"(.+?)\".*$", DOTALL);
-    private static final ObjectMapper objectMapper = objectMapper();
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    // shared by all instances, so two modules of a parallel build which include the same file do not write it concurrently.
+    private static final Striped<Lock> locks = Striped.lock(64);
     private final Logger logger;
 
     VersionWriter(Logger logger) {
@@ -51,7 +81,7 @@ class VersionWriter {
     }
 
     /**
-     * Writes the version to the given <code>package.json</code>.
+     * Writes the version to the given <code>package.json</code> without flushing it explicitly.
      * 
      * @param pomVersion the version that should be written to the file
      * @param packageJson the <code>package.json</code> there the version is written.
@@ -60,43 +90,448 @@ class VersionWriter {
      *         contains a {@link Protocol} (if the version needs to be synchronized).
      * @since 1.0.0
      */
-    @SneakyThrows(IOException.class)
     Optional<Protocol> write(String pomVersion, PackageJson packageJson, Charset encoding) {
+        return write(pomVersion, packageJson, encoding, Options.of(new FsyncPolicy(FsyncPolicy.NONE, logger)));
+    }
+
+    /**
+     * Writes the version to the given <code>package.json</code>.
+     * <p>
+     * The file is read only once, the same bytes are used to decide if the version needs to be changed and to produce the new
+     * content. The new content is written into a temporary file next to the original which then atomically replaces the
+     * original, so the file is never left behind half-written. If the file is encoded in UTF-8, only the head of the file up to
+     * the version is read into memory and the rest is transferred unchanged into the temporary file, so neither the heap usage
+     * nor the CPU time depends on the size of the file. Files in other encodings are decoded, spliced and encoded again. A byte
+     * order mark at the start of the file takes precedence over the given encoding and is kept, see {@link PackageJsonReader}.
+     * <p>
+     * The version of an npm lockfile is written to the top-level version and to the version of the root package
+     * (<code>packages[""].version</code>), both are located in the same pass. The versions of the given workspace members
+     * listed among the packages of the lockfile are written in the same pass as well.
+     * <p>
+     * The file is not touched at all if the new content would be the same as the current content byte for byte, so its
+     * modification time only changes if its content changes.
+     * <p>
+     * If the options contain a {@link Transaction}, the new content is only staged and replaces the original when the
+     * transaction is committed.
+     * <p>
+     * If the options contain a {@link HeaderCache} and the file is encoded in UTF-8, the file is not read at all as long as the
+     * versions recorded for it are unchanged and already in sync. The versions located while reading and the versions written
+     * are recorded in the cache.
+     * <p>
+     * The method is thread-safe, the same file is read and written by only one thread at a time.
+     * 
+     * @param pomVersion the version that should be written to the file
+     * @param packageJson the <code>package.json</code> there the version is written.
+     * @param encoding the encoding in which the <code>package.json</code> is interpreted.
+     * @param options the options how the version is written.
+     * @return an {@link Optional} that is either empty (if the version is already the same as the version in the pom.xml) or
+     *         contains a {@link Protocol} (if the version needs to be synchronized).
+     * @since 1.4.0
+     */
+    @SneakyThrows(IOException.class)
+    Optional<Protocol> write(String pomVersion, PackageJson packageJson, Charset encoding, Options options) {
         String name = packageJson.getName();
+        Path file = packageJson.getFile().toPath();
 
-        String version = extractVersion(packageJson);
-        if (version.equals(pomVersion)) {
-            logger.debug("The version of '%s' is the same as of the pom.xml, therefore returning.", name);
-            return empty();
+        Rewriter rewriter = content -> rewrite(file, content, options);
+        Set<String> members = packageJson.isLockfile() ? options.getWorkspaceMembers() : emptySet();
+        Locator locator =
+            packageJson.isLockfile() ? parser -> VersionLocator.locateLockfile(parser, members) : VersionWriter::locateVersion;
+
+        Lock lock = locks.get(file.toAbsolutePath().normalize());
+        lock.lock();
+        try {
+            boolean written = UTF_8.equals(encoding)
+                ? splice(pomVersion, name, file, locator, rewriter, Headers.of(options.getHeaderCache(), file, members))
+                : replace(pomVersion, name, file, locator, encoding, rewriter);
+            return written ? Optional.of(Protocol.of(name, pomVersion)) : empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean splice(String pomVersion, String name, Path file, Locator locator, Rewriter rewriter, Headers headers)
+        throws IOException {
+        Fingerprint fingerprint = headers.fingerprint();
+        List<Location> cached = headers.get(fingerprint);
+        if (cached != null && (cached.isEmpty() || cached.stream().allMatch(l -> l.getVersion().equals(pomVersion)))) {
+            logger.debug("The version of '%s' is known to be the same as of the pom.xml, therefore returning.", name);
+            return false;
         }
 
-        File file = packageJson.getFile();
-        String content = FileUtils.readFileToString(file, encoding);
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            Encoding encoding = PackageJsonReader.detect(channel, UTF_8);
+            if (!UTF_8.equals(encoding.getCharset())) {
+                return replace(pomVersion, name, file, locator, UTF_8, rewriter);
+            }
+
+            Source source = new Source(channel);
+            List<Location> locations = locateVersions(source, file, locator);
+            headers.put(fingerprint, locations);
+            boolean required = isWriteRequired(pomVersion, name, locations);
+            if (required) {
+                byte[] replacement = JsonStringEncoder.getInstance().quoteAsUTF8(pomVersion);
+                boolean changed = false;
+                for (Location location : locations) {
+                    changed |= !ByteBuffer.wrap(replacement).equals(source.raw(location));
+                }
+                required = isContentChanged(name, changed);
+                if (required) {
+                    Fingerprint written = rewriter.rewrite(target -> source.splice(locations, replacement, target));
+                    headers.put(written, spliced(locations, pomVersion, replacement.length));
+                }
+            }
+            logger.debug("Read %d bytes of the %d bytes of '%s'.", source.getBytesRead(), source.size(), name);
+            return required;
+        }
+    }
+
+    private boolean replace(String pomVersion, String name, Path file, Locator locator, Charset encoding, Rewriter rewriter)
+        throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        Encoding detected = PackageJsonReader.detect(bytes, bytes.length, encoding);
+        int bom = detected.getByteOrderMarkLength();
+        String content = new String(bytes, bom, bytes.length - bom, detected.getCharset());
+
+        List<Location> locations = locateVersions(content, locator);
+        boolean required = isWriteRequired(pomVersion, name, locations);
+        if (required) {
+            char[] replacement = JsonStringEncoder.getInstance().quoteAsString(pomVersion);
+            StringBuilder rewritten = new StringBuilder(content.length() + locations.size() * replacement.length);
+            int position = 0;
+            for (Location location : locations) {
+                rewritten.append(content, position, (int) location.getStart()).append(replacement);
+                position = (int) location.getEnd();
+            }
+            rewritten.append(content, position, content.length());
+
+            ByteBuffer body = detected.getCharset().encode(CharBuffer.wrap(rewritten));
+            ByteBuffer encoded = ByteBuffer.allocate(bom + body.remaining());
+            encoded.put(bytes, 0, bom).put(body).flip();
+            required = isContentChanged(name, !encoded.equals(ByteBuffer.wrap(bytes)));
+            if (required) {
+                rewriter.rewrite(target -> write(encoded, target));
+            }
+        }
+        logger.debug("Read %d bytes of the %d bytes of '%s'.", bytes.length, bytes.length, name);
+        return required;
+    }
+
+    private static List<Location> spliced(List<Location> locations, String pomVersion, int length) {
+        // each replacement shifts the versions behind it by the difference in length.
+        List<Location> spliced = Lists.newArrayListWithCapacity(locations.size());
+        long shift = 0;
+        for (Location location : locations) {
+            long start = location.getStart() + shift;
+            spliced.add(Location.of(pomVersion, start, start + length));
+            shift += length - (location.getEnd() - location.getStart());
+        }
+        return spliced;
+    }
 
-        Matcher matcher = pattern.matcher(content);
-        if (!matcher.matches() || matcher.groupCount() != 1) {
+    private boolean isWriteRequired(String pomVersion, String name, List<Location> locations) {
+        if (locations.isEmpty()) {
             logger.debug("No version found in '%s', therefore returning.", name);
-            return empty();
+            return false;
+        }
+
+        if (locations.stream().allMatch(l -> l.getVersion().equals(pomVersion))) {
+            logger.debug("The version of '%s' is the same as of the pom.xml, therefore returning.", name);
+            return false;
         }
 
         logger.debug("Replacing the version in '%s' with version '%s'.", name, pomVersion);
-        content = new StringBuilder(content) //
-            .replace(matcher.start(1), matcher.end(1), pomVersion) //
-            .toString();
+        return true;
+    }
 
-        FileUtils.write(file, content, encoding, false);
-        return Optional.of(Protocol.of(name, pomVersion));
+    private boolean isContentChanged(String name, boolean changed) {
+        // a version which is not representable in the encoding of the file may end up in exactly the same bytes.
+        if (!changed) {
+            logger.debug("The content of '%s' would not change, therefore returning.", name);
+            return false;
+        }
+        return true;
     }
 
-    @SneakyThrows(IOException.class)
-    private static String extractVersion(PackageJson packageJson) {
-        return objectMapper.readValue(packageJson.getFile(), PackageJsonContent.class).getVersion();
+    private static List<Location> locateVersions(String content, Locator locator) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            return locator.locate(parser);
+        }
+    }
+
+    private static List<Location> locateVersions(Source source, Path file, Locator locator) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(source)) {
+            // only the UTF-8 parser reports byte offsets, a file which looks like being encoded in UTF-16 or UTF-32 (even without
+            // a byte order mark) is read through a reader.
+            if (!(parser instanceof UTF8StreamJsonParser)) {
+                throw new CharConversionException(format("'%s' is not encoded in UTF-8!", file));
+            }
+            return locator.locate(parser);
+        }
+    }
+
+    private static List<Location> locateVersion(JsonParser parser) throws IOException {
+        Location location = VersionLocator.locate(parser);
+        return location != null ? singletonList(location) : emptyList();
+    }
+
+    private Fingerprint rewrite(Path file, Content content, Options options) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Transaction transaction = options.getTransaction();
+        Path temp = transaction != null ? transaction.stage(file)
+            : file.resolveSibling("." + file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        Fingerprint fingerprint;
+        try {
+            try (FileChannel target = FileChannel.open(temp, CREATE_NEW, WRITE)) {
+                content.writeTo(target);
+                options.getFsyncPolicy().written(target);
+            }
+            copyPermissions(file, temp);
+            if (options.isPreserveFileAttributes()) {
+                copyAttributes(file, attributes, temp);
+            }
+            // the file keeps the fingerprint of the temporary file when it is replaced, even if it is replaced on commit. The
+            // fingerprint of the file which was just written is only reliable together with its content.
+            fingerprint = HeaderCache.fingerprint(temp, options.getHeaderCache() != null);
+            if (transaction == null) {
+                Transaction.replace(temp, file);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        if (transaction == null) {
+            options.getFsyncPolicy().replaced(file);
+        }
+        return fingerprint;
+    }
+
+    private static void write(ByteBuffer buffer, FileChannel target) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static void copyPermissions(Path source, Path target) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        if (view != null) {
+            Files.setPosixFilePermissions(target, view.readAttributes().permissions());
+        }
+    }
+
+    private void copyAttributes(Path source, BasicFileAttributes attributes, Path target) throws IOException {
+        Files.getFileAttributeView(target, BasicFileAttributeView.class).setTimes(attributes.lastModifiedTime(),
+            attributes.lastAccessTime(), attributes.creationTime());
+
+        PosixFileAttributeView view = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        if (view != null) {
+            // only a privileged user is allowed to hand over a file to another owner.
+            PosixFileAttributes posix = view.readAttributes();
+            try {
+                PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+                targetView.setGroup(posix.group());
+                targetView.setOwner(posix.owner());
+            } catch (IOException e) {
+                logger.debug("Unable to restore the owner of '%s' [%s].", source, e.getMessage());
+            }
+        }
+    }
+
+    private static long transfer(FileChannel source, long position, long count, FileChannel target) throws IOException {
+        // a single transfer may move less bytes than requested.
+        long total = count;
+        while (count > 0) {
+            long transferred = source.transferTo(position, count, target);
+            if (transferred <= 0) {
+                throw new EOFException("The file was truncated while being rewritten!");
+            }
+            position += transferred;
+            count -= transferred;
+        }
+        return total;
+    }
+
+    /**
+     * The source of a file which is spliced. Everything the parser reads from the head of the file is kept in memory (up to a
+     * limit), so the head does not need to be read a second time while writing the new content.
+     */
+    private static class Source extends InputStream {
+
+        private static final int HEAD_LIMIT = 1 << 20;
+
+        private final FileChannel channel;
+        private byte[] head = new byte[8192];
+        private int headLength;
+        private long bytesRead;
+
+        Source(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = channel.read(ByteBuffer.wrap(b, off, len));
+            if (read > 0) {
+                bytesRead += read;
+                keep(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the parser closes its source, but the channel is still needed to transfer the rest of the file.
+        }
+
+        void splice(List<Location> locations, byte[] replacement, FileChannel target) throws IOException {
+            long position = 0;
+            for (Location location : locations) {
+                copy(position, location.getStart(), target);
+                write(ByteBuffer.wrap(replacement), target);
+                position = location.getEnd();
+            }
+            copy(position, channel.size(), target);
+        }
+
+        ByteBuffer raw(Location location) throws IOException {
+            int length = (int) (location.getEnd() - location.getStart());
+            if (head != null && location.getEnd() <= headLength) {
+                return ByteBuffer.wrap(head, (int) location.getStart(), length);
+            }
+            ByteBuffer raw = ByteBuffer.allocate(length);
+            while (raw.hasRemaining()) {
+                if (channel.read(raw, location.getStart() + raw.position()) < 0) {
+                    throw new EOFException("The file was truncated while being rewritten!");
+                }
+            }
+            bytesRead += length;
+            raw.flip();
+            return raw;
+        }
+
+        long getBytesRead() {
+            return bytesRead;
+        }
+
+        long size() throws IOException {
+            return channel.size();
+        }
+
+        private void copy(long from, long to, FileChannel target) throws IOException {
+            if (head != null && from < headLength) {
+                int until = (int) Math.min(to, headLength);
+                write(ByteBuffer.wrap(head, (int) from, until - (int) from), target);
+                from = until;
+            }
+            // the rest was either never read or was too far behind the start of the file to be kept in memory.
+            if (from < to) {
+                bytesRead += transfer(channel, from, to - from, target);
+            }
+        }
+
+        private void keep(byte[] b, int off, int len) {
+            if (head == null) {
+                return;
+            }
+            if (headLength + len > HEAD_LIMIT) {
+                head = null;
+                return;
+            }
+            if (headLength + len > head.length) {
+                head = Arrays.copyOf(head, Math.max(head.length * 2, headLength + len));
+            }
+            System.arraycopy(b, off, head, headLength, len);
+            headLength += len;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Locator {
+
+        List<Location> locate(JsonParser parser) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Rewriter {
+
+        Fingerprint rewrite(Content content) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Content {
+
+        void writeTo(FileChannel target) throws IOException;
     }
 
-    private static ObjectMapper objectMapper() {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.disable(FAIL_ON_UNKNOWN_PROPERTIES);
-        return objectMapper;
+    /**
+     * The access to the versions recorded for a file in a {@link HeaderCache}, which does nothing if there is no cache.
+     */
+    @Value(staticConstructor = "of")
+    private static class Headers {
+
+        HeaderCache cache;
+        Path file;
+        Set<String> members;
+
+        Fingerprint fingerprint() throws IOException {
+            return cache != null ? HeaderCache.fingerprint(file) : null;
+        }
+
+        List<Location> get(Fingerprint fingerprint) {
+            return cache != null ? cache.get(file, members, fingerprint) : null;
+        }
+
+        void put(Fingerprint fingerprint, List<Location> locations) {
+            if (cache != null) {
+                cache.put(file, members, fingerprint, locations);
+            }
+        }
+    }
+
+    /**
+     * The options how the version of a <code>package.json</code> is written.
+     * 
+     * @since 1.4.0
+     */
+    @With
+    @Value(staticConstructor = "of")
+    static class Options {
+
+        /**
+         * The policy that decides how the file is flushed to the storage device.
+         */
+        FsyncPolicy fsyncPolicy;
+
+        /**
+         * If the time stamps, the owner and the group of the file are restored after the file is rewritten.
+         */
+        boolean preserveFileAttributes;
+
+        /**
+         * The paths of the workspace members (relative to the directory of the file) whose versions are written as well if the
+         * file is an npm lockfile.
+         */
+        Set<String> workspaceMembers;
+
+        /**
+         * The transaction the file is staged in or {@code null} if the file is replaced right away.
+         */
+        Transaction transaction;
+
+        /**
+         * The cache the versions of the file are looked up in and recorded in or {@code null} if the file is always read.
+         */
+        HeaderCache headerCache;
+
+        static Options of(FsyncPolicy fsyncPolicy) {
+            return of(fsyncPolicy, false, emptySet(), null, null);
+        }
     }
 
     /**
@@ -121,10 +556,4 @@ class VersionWriter {
                 .toString();
         }
     }
-
-    @Data
-    private static class PackageJsonContent {
-
-        private String version;
-    }
 }
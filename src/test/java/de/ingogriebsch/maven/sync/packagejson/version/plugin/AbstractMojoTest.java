@@ -15,6 +15,12 @@
  */
 package de.ingogriebsch.maven.sync.packagejson.version.plugin;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
+import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doReturn;
@@ -22,12 +28,23 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonCollector.Params;
+import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class AbstractMojoTest {
 
@@ -260,6 +277,112 @@ class AbstractMojoTest {
         }
     }
 
+    @Nested
+    class ProcessPackageJsonsTest {
+
+        private final String[] includes = { "**/package.json" };
+
+        @Test
+        void should_stop_processing_the_package_jsons_after_the_first_failure(@TempDir File tempDir) throws Exception {
+            for (String module : new String[] { "a", "b", "c", "d", "e" }) {
+                writeStringToFile(new File(tempDir, module + "/package.json"), "{}", UTF_8);
+            }
+            IllegalStateException exception = new IllegalStateException("Must stop the processing!");
+            AtomicInteger processed = new AtomicInteger();
+
+            AbstractMojo mojo = mojo(tempDir, 1);
+            assertThatThrownBy(() -> mojo.processPackageJsons(includes, null, pj -> {
+                processed.incrementAndGet();
+                throw exception;
+            })).isSameAs(exception);
+
+            assertThat(processed).hasValue(1);
+        }
+
+        @Test
+        void should_interrupt_the_package_jsons_in_progress_after_the_first_failure(@TempDir File tempDir) throws Exception {
+            writeStringToFile(new File(tempDir, "a/package.json"), "{}", UTF_8);
+            writeStringToFile(new File(tempDir, "b/package.json"), "{}", UTF_8);
+            IllegalStateException exception = new IllegalStateException("Must stop the processing!");
+            CountDownLatch started = new CountDownLatch(2);
+            AtomicBoolean interrupted = new AtomicBoolean();
+
+            AbstractMojo mojo = mojo(tempDir, 2);
+            assertThatThrownBy(() -> mojo.processPackageJsons(includes, null, pj -> {
+                started.countDown();
+                Uninterruptibles.awaitUninterruptibly(started);
+                if (pj.getName().startsWith("a")) {
+                    throw exception;
+                }
+                try {
+                    Thread.sleep(30_000);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            })).isSameAs(exception);
+
+            assertThat(interrupted).isTrue();
+        }
+
+        @Test
+        void should_not_hand_more_package_jsons_to_the_workers_than_they_can_process(@TempDir File tempDir) throws Exception {
+            int workers = 2;
+            AtomicInteger handed = new AtomicInteger();
+            AtomicInteger processed = new AtomicInteger();
+            AtomicInteger pending = new AtomicInteger();
+
+            AbstractMojo mojo = mojo(tempDir, workers);
+            FieldUtils.writeField(mojo, "packageJsonCollector", new PackageJsonCollector(noOpLogger()) {
+
+                @Override
+                public void collect(Params params, Consumer<PackageJson> consumer) {
+                    for (int i = 0; i < 50; i++) {
+                        handed.incrementAndGet();
+                        consumer.accept(PackageJson.of(tempDir, new File(tempDir, i + "/package.json")));
+                        pending.accumulateAndGet(handed.get() - processed.get(), Math::max);
+                    }
+                }
+            }, true);
+
+            int found = mojo.processPackageJsons(includes, null, pj -> {
+                Uninterruptibles.sleepUninterruptibly(1, TimeUnit.MILLISECONDS);
+                processed.incrementAndGet();
+            });
+
+            assertThat(found).isEqualTo(50);
+            assertThat(processed).hasValue(50);
+            assertThat(pending.get()).isLessThanOrEqualTo(workers);
+        }
+
+        private AbstractMojo mojo(File baseDir, int workers) {
+            AbstractMojo mojo = new AbstractMojo() {
+
+                @Override
+                protected boolean isSkipped() {
+                    return false;
+                }
+
+                @Override
+                protected void doExecute() throws MojoExecutionException, MojoFailureException {
+                }
+
+                @Override
+                protected String getPomVersionEvaluation() {
+                    return "runtime";
+                }
+
+                @Override
+                protected int getWorkers() {
+                    return workers;
+                }
+            };
+            mojo.setLog(mock(Log.class));
+            mojo.project = mock(MavenProject.class);
+            doReturn(baseDir).when(mojo.project).getBasedir();
+            return mojo;
+        }
+    }
+
     @Nested
     class LoggerTest {
 
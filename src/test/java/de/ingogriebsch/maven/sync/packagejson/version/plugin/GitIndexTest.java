@@ -0,0 +1,138 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonCollector.GIT_DISCOVERY;
+import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonCollector.Params;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GitIndexTest {
+
+    @Test
+    void should_return_null_if_the_directory_does_not_belong_to_a_repository(@TempDir File tempDir) throws IOException {
+        assertThat(GitIndex.of(tempDir.toPath())).isNull();
+    }
+
+    @Test
+    void should_return_the_tracked_files(@TempDir File tempDir) throws Exception {
+        createRepository(tempDir);
+
+        GitIndex index = GitIndex.of(tempDir.toPath().resolve("packages"));
+        assertThat(index.getWorkTree()).isEqualTo(tempDir.toPath());
+        assertThat(index.read()).containsExactly("package.json", "packages/a/package.json",
+            "packages/" + longName() + "/package.json");
+    }
+
+    @Test
+    void should_return_the_tracked_files_of_an_index_in_version_4(@TempDir File tempDir) throws Exception {
+        createRepository(tempDir);
+        git(tempDir, "update-index", "--index-version", "4");
+
+        GitIndex index = GitIndex.of(tempDir.toPath());
+        assertThat(index.read()).containsExactly("package.json", "packages/a/package.json",
+            "packages/" + longName() + "/package.json");
+    }
+
+    @Test
+    void should_return_the_tracked_files_of_a_linked_worktree(@TempDir File tempDir) throws Exception {
+        File repository = new File(tempDir, "repository");
+        repository.mkdir();
+        createRepository(repository);
+        // the long name cannot be checked out into the worktree.
+        git(repository, "update-index", "--force-remove", "packages/" + longName() + "/package.json");
+        git(repository, "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "initial");
+        git(repository, "worktree", "add", "-q", "../worktree");
+
+        GitIndex index = GitIndex.of(new File(tempDir, "worktree").toPath());
+        assertThat(index.read()).contains("packages/a/package.json");
+    }
+
+    @Test
+    void should_collect_only_the_tracked_files_if_discovered_through_git(@TempDir File tempDir) throws Exception {
+        createRepository(tempDir);
+        File untracked = new File(tempDir, "packages/b/package.json");
+        writeStringToFile(untracked, "{}", UTF_8);
+
+        Params params = Params.of(tempDir, new String[] { "**/package.json" }).withDiscovery(GIT_DISCOVERY);
+        List<PackageJson> files = new PackageJsonCollector(noOpLogger()).collect(params);
+
+        assertThat(files).extracting(PackageJson::getName).containsExactly("package.json", "packages/a/package.json");
+    }
+
+    @Test
+    void should_walk_the_base_directory_if_it_does_not_belong_to_a_repository(@TempDir File tempDir) throws IOException {
+        writeStringToFile(new File(tempDir, "dir/package.json"), "{}", UTF_8);
+
+        Params params = Params.of(tempDir, new String[] { "**/package.json" }).withDiscovery(GIT_DISCOVERY);
+        List<PackageJson> files = new PackageJsonCollector(noOpLogger()).collect(params);
+
+        assertThat(files).extracting(PackageJson::getName).containsExactly("dir/package.json");
+    }
+
+    private static void createRepository(File dir) throws Exception {
+        assumeTrue(isGitAvailable(), "git is not available");
+        writeStringToFile(new File(dir, "package.json"), "{}", UTF_8);
+        writeStringToFile(new File(dir, "packages/a/package.json"), "{}", UTF_8);
+        writeStringToFile(new File(dir, "node_modules/x/package.json"), "{}", UTF_8);
+        writeStringToFile(new File(dir, ".gitignore"), "node_modules/\n", UTF_8);
+
+        git(dir, "init", "-q");
+        git(dir, "add", "package.json", "packages");
+        // a name which does not fit into the 12 bits of the flags of an index entry and which is only part of the index.
+        String blob = git(dir, "hash-object", "-w", "package.json").trim();
+        git(dir, "update-index", "--add", "--cacheinfo", "100644," + blob + ",packages/" + longName() + "/package.json");
+    }
+
+    private static String longName() {
+        StringBuilder name = new StringBuilder();
+        for (char c = 'a'; c < 'v'; c++) {
+            name.append(name.length() > 0 ? "/" : "").append(StringUtils.repeat(c, 200));
+        }
+        return name.toString();
+    }
+
+    private static boolean isGitAvailable() {
+        try {
+            return new ProcessBuilder("git", "--version").start().waitFor() == 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static String git(File dir, String... args) throws Exception {
+        String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy(args, 0, command, 1, args.length);
+        Process process = new ProcessBuilder(command).directory(dir).redirectErrorStream(true).start();
+        String output = IOUtils.toString(process.getInputStream(), UTF_8);
+        assertThat(process.waitFor()).as(output).isZero();
+        return output;
+    }
+}
@@ -0,0 +1,148 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+
+import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.HeaderCache.Fingerprint;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.VersionLocator.Location;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HeaderCacheTest {
+
+    private static final List<Location> LOCATIONS = singletonList(Location.of("1.0.0", 13, 18));
+
+    @Test
+    void should_return_the_locations_as_long_as_the_file_is_unchanged(@TempDir File tempDir) throws IOException {
+        Path file = age(write(new File(tempDir, "package.json"), "{\"version\": \"1.0.0\"}"));
+        HeaderCache cache = HeaderCache.of(10);
+        cache.put(file, emptySet(), HeaderCache.fingerprint(file), LOCATIONS);
+
+        assertThat(cache.get(file, emptySet(), HeaderCache.fingerprint(file))).isEqualTo(LOCATIONS);
+        assertThat(cache.get(file.getParent().resolve("./package.json"), emptySet(), HeaderCache.fingerprint(file)))
+            .isEqualTo(LOCATIONS);
+        assertThat(cache.get(file, singleton("packages/a"), HeaderCache.fingerprint(file))).isNull();
+
+        write(file.toFile(), "{\"version\": \"1.0.10\"}");
+        assertThat(cache.get(file, emptySet(), HeaderCache.fingerprint(file))).isNull();
+    }
+
+    @Test
+    void should_not_record_a_file_which_was_modified_right_before_its_fingerprint_was_taken(@TempDir File tempDir)
+        throws IOException {
+        Path file = write(new File(tempDir, "package.json"), "{\"version\": \"1.0.0\"}");
+        FileTime modified = Files.getLastModifiedTime(file);
+        HeaderCache cache = HeaderCache.of(10);
+        cache.put(file, emptySet(), HeaderCache.fingerprint(file), LOCATIONS);
+
+        // an edit in the same tick of the file system clock which keeps the size of the file.
+        write(file.toFile(), "{\"version\": \"1.0.1\"}");
+        Files.setLastModifiedTime(file, modified);
+
+        assertThat(cache.get(file, emptySet(), HeaderCache.fingerprint(file))).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void should_record_a_file_which_was_just_written_as_long_as_its_content_is_unchanged(@TempDir File tempDir)
+        throws IOException {
+        Path file = write(new File(tempDir, "package.json"), "{\"version\": \"1.0.0\"}");
+        FileTime modified = Files.getLastModifiedTime(file);
+        HeaderCache cache = HeaderCache.of(10);
+        cache.put(file, emptySet(), HeaderCache.fingerprint(file, true), LOCATIONS);
+
+        assertThat(cache.get(file, emptySet(), HeaderCache.fingerprint(file))).isEqualTo(LOCATIONS);
+
+        // an edit in the same tick of the file system clock which keeps the size of the file.
+        write(file.toFile(), "{\"version\": \"1.0.1\"}");
+        Files.setLastModifiedTime(file, modified);
+
+        assertThat(cache.get(file, emptySet(), HeaderCache.fingerprint(file))).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void should_drop_the_record_of_a_file_which_is_recorded_again_right_after_its_modification(@TempDir File tempDir)
+        throws IOException {
+        Path file = age(write(new File(tempDir, "package.json"), "{\"version\": \"1.0.0\"}"));
+        HeaderCache cache = HeaderCache.of(10);
+        cache.put(file, emptySet(), HeaderCache.fingerprint(file), LOCATIONS);
+
+        write(file.toFile(), "{\"version\": \"1.0.1\"}");
+        cache.put(file, emptySet(), HeaderCache.fingerprint(file), singletonList(Location.of("1.0.1", 13, 18)));
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void should_evict_the_least_recently_used_entries(@TempDir File tempDir) throws IOException {
+        HeaderCache cache = HeaderCache.of(2);
+        Fingerprint fingerprint = HeaderCache.fingerprint(age(write(new File(tempDir, "package.json"), "{}")));
+        Path a = tempDir.toPath().resolve("a/package.json");
+        Path b = tempDir.toPath().resolve("b/package.json");
+        Path c = tempDir.toPath().resolve("c/package.json");
+
+        cache.put(a, emptySet(), fingerprint, LOCATIONS);
+        cache.put(b, emptySet(), fingerprint, LOCATIONS);
+        assertThat(cache.get(a, emptySet(), fingerprint)).isNotNull();
+        cache.put(c, emptySet(), fingerprint, LOCATIONS);
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get(a, emptySet(), fingerprint)).isNotNull();
+        assertThat(cache.get(b, emptySet(), fingerprint)).isNull();
+        assertThat(cache.get(c, emptySet(), fingerprint)).isNotNull();
+    }
+
+    @Test
+    void should_share_the_cache_between_the_clones_of_a_session() {
+        MavenExecutionRequest request = mock(MavenExecutionRequest.class);
+        MavenSession session = mock(MavenSession.class);
+        doReturn(request).when(session).getRequest();
+        MavenSession clone = mock(MavenSession.class);
+        doReturn(request).when(clone).getRequest();
+        MavenSession other = mock(MavenSession.class);
+        doReturn(mock(MavenExecutionRequest.class)).when(other).getRequest();
+
+        assertThat(HeaderCache.of(session)).isSameAs(HeaderCache.of(clone)).isNotSameAs(HeaderCache.of(other));
+    }
+
+    private static Path write(File file, String content) throws IOException {
+        writeStringToFile(file, content, UTF_8);
+        return file.toPath();
+    }
+
+    private static Path age(Path file) throws IOException {
+        return Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+    }
+}
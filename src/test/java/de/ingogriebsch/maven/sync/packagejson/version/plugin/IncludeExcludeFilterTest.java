@@ -0,0 +1,86 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.io.File.separator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class IncludeExcludeFilterTest {
+
+    @Test
+    void should_include_everything_if_no_includes_are_given() {
+        IncludeExcludeFilter filter = new IncludeExcludeFilter(null, null, null);
+
+        assertThat(filter.isIncluded(path("dir", "package.json"))).isTrue();
+        assertThat(filter.isDescended("dir", "dir")).isTrue();
+    }
+
+    @Test
+    void should_not_descend_a_directory_if_no_include_can_match_below() {
+        IncludeExcludeFilter filter = new IncludeExcludeFilter(new String[] { "package.json" }, null, null);
+
+        assertThat(filter.isDescended("", "")).isTrue();
+        assertThat(filter.isDescended("dir", "dir")).isFalse();
+    }
+
+    @Test
+    void should_not_descend_a_directory_if_it_is_excluded_as_a_whole() {
+        IncludeExcludeFilter filter =
+            new IncludeExcludeFilter(new String[] { "**/package.json" }, new String[] { "**/dist/**" }, null);
+
+        assertThat(filter.isDescended(path("module", "dist"), "dist")).isFalse();
+        assertThat(filter.isDescended(path("module", "src"), "src")).isTrue();
+    }
+
+    @Test
+    void should_not_descend_a_directory_if_it_is_pruned() {
+        IncludeExcludeFilter filter =
+            new IncludeExcludeFilter(new String[] { "**/package.json" }, null, new String[] { "node_modules" });
+
+        assertThat(filter.isDescended(path("module", "node_modules"), "node_modules")).isFalse();
+    }
+
+    @Test
+    void should_not_include_a_file_if_it_is_excluded() {
+        IncludeExcludeFilter filter =
+            new IncludeExcludeFilter(new String[] { "**/package.json" }, new String[] { "dir/package.json" }, null);
+
+        assertThat(filter.isIncluded(path("dir", "package.json"))).isFalse();
+        assertThat(filter.isIncluded(path("other", "package.json"))).isTrue();
+    }
+
+    @Test
+    void should_classify_patterns_without_wildcards_as_literal() {
+        assertThat(IncludeExcludeFilter.isLiteral("package.json")).isTrue();
+        assertThat(IncludeExcludeFilter.isLiteral("dir/package-lock.json")).isTrue();
+    }
+
+    @Test
+    void should_not_classify_patterns_with_wildcards_or_relative_segments_as_literal() {
+        assertThat(IncludeExcludeFilter.isLiteral("**/package.json")).isFalse();
+        assertThat(IncludeExcludeFilter.isLiteral("package?.json")).isFalse();
+        assertThat(IncludeExcludeFilter.isLiteral("dir/")).isFalse();
+        assertThat(IncludeExcludeFilter.isLiteral("../package.json")).isFalse();
+        assertThat(IncludeExcludeFilter.isLiteral("%regex[.*package\\.json]")).isFalse();
+    }
+
+    private static String path(String... elements) {
+        return String.join(separator, elements);
+    }
+}
@@ -0,0 +1,98 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.io.File.separator;
+import static java.nio.file.attribute.FileTime.fromMillis;
+
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IncrementalDirectoryWalkerTest {
+
+    private static final FileTime PAST = fromMillis(System.currentTimeMillis() - 60 * 60 * 1000);
+    private static final IncludeExcludeFilter FILTER = new IncludeExcludeFilter(new String[] { "**/package.json" }, null, null);
+
+    @TempDir
+    Path tempDir;
+
+    private Path baseDir;
+    private Path indexFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        baseDir = Files.createDirectories(tempDir.resolve("project"));
+        indexFile = tempDir.resolve("discovery.idx");
+
+        Files.createFile(baseDir.resolve("package.json"));
+        Files.createFile(Files.createDirectories(baseDir.resolve("dir")).resolve("package.json"));
+        Files.setLastModifiedTime(baseDir.resolve("dir"), PAST);
+        Files.setLastModifiedTime(baseDir, PAST);
+    }
+
+    @Test
+    void should_return_the_included_files_if_no_index_exists() throws IOException {
+        assertThat(walk("key")).containsExactlyInAnyOrder("package.json", "dir" + separator + "package.json");
+        assertThat(indexFile).exists();
+    }
+
+    @Test
+    void should_not_list_a_directory_again_if_it_is_unchanged() throws IOException {
+        walk("key");
+
+        // the directory is modified, but its last modification time is reset to the one stored in the index.
+        Files.delete(baseDir.resolve("dir").resolve("package.json"));
+        Files.setLastModifiedTime(baseDir.resolve("dir"), PAST);
+
+        assertThat(walk("key")).containsExactlyInAnyOrder("package.json", "dir" + separator + "package.json");
+    }
+
+    @Test
+    void should_list_a_directory_again_if_it_is_changed() throws IOException {
+        walk("key");
+
+        Files.delete(baseDir.resolve("dir").resolve("package.json"));
+
+        assertThat(walk("key")).containsExactly("package.json");
+    }
+
+    @Test
+    void should_discard_the_index_if_the_key_is_changed() throws IOException {
+        walk("key");
+
+        Files.delete(baseDir.resolve("dir").resolve("package.json"));
+        Files.setLastModifiedTime(baseDir.resolve("dir"), PAST);
+
+        assertThat(walk("other-key")).containsExactly("package.json");
+    }
+
+    private List<String> walk(String key) throws IOException {
+        DiscoveryIndex index = DiscoveryIndex.load(indexFile, key, noOpLogger());
+        List<String> paths = new IncrementalDirectoryWalker(noOpLogger()).walk(baseDir, FILTER, index);
+        index.save();
+        return paths;
+    }
+}
@@ -15,15 +15,25 @@
  */
 package de.ingogriebsch.maven.sync.packagejson.version.plugin;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.logger;
 import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonCollector.WORKSPACES_DISCOVERY;
+import static org.apache.commons.io.FileUtils.writeStringToFile;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.InstanceOfAssertFactories.FILE;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonCollector.Params;
+import org.apache.maven.plugin.logging.Log;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -117,4 +127,219 @@ class PackageJsonCollectorTest {
 
         assertThat(files).isEmpty();
     }
+
+    @Test
+    void should_not_descend_into_prune_directories(@TempDir File tempDir) throws IOException {
+        File packageJson = new File(tempDir, "package.json");
+        packageJson.createNewFile();
+
+        File nodeModules = new File(tempDir, "node_modules/some-module");
+        nodeModules.mkdirs();
+        new File(nodeModules, "package.json").createNewFile();
+
+        Params params = Params.of(tempDir, new String[] { "**/package.json" });
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+        List<PackageJson> files = collector.collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson);
+    }
+
+    @Test
+    void should_descend_into_prune_directories_if_they_are_not_configured(@TempDir File tempDir) throws IOException {
+        File nodeModules = new File(tempDir, "node_modules/some-module");
+        nodeModules.mkdirs();
+        File packageJson = new File(nodeModules, "package.json");
+        packageJson.createNewFile();
+
+        Params params = Params.of(tempDir, new String[] { "**/package.json" }).withPruneDirectories(new String[0]);
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+        List<PackageJson> files = collector.collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson);
+    }
+
+    @Test
+    void should_not_return_files_of_excluded_directories(@TempDir File tempDir) throws IOException {
+        File packageJson = new File(tempDir, "package.json");
+        packageJson.createNewFile();
+
+        File subDir = new File(tempDir, "dir");
+        subDir.mkdir();
+        new File(subDir, "package.json").createNewFile();
+
+        Params params = Params.of(tempDir, new String[] { "**/package.json" }, new String[] { "dir/" });
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+        List<PackageJson> files = collector.collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson);
+    }
+
+    @Test
+    void should_return_the_files_in_a_deterministic_order(@TempDir File tempDir) throws IOException {
+        File packageJson1 = new File(tempDir, "package.json");
+        packageJson1.createNewFile();
+
+        File subDir = new File(tempDir, "dir");
+        subDir.mkdir();
+        File packageJson2 = new File(subDir, "package.json");
+        packageJson2.createNewFile();
+
+        Params params = Params.of(tempDir, new String[] { "**/package.json" });
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+        List<PackageJson> files = collector.collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson2, packageJson1);
+    }
+
+    @Test
+    void should_resolve_literal_includes_even_if_they_point_into_a_prune_directory(@TempDir File tempDir) throws IOException {
+        File nodeModules = new File(tempDir, "node_modules/some-module");
+        nodeModules.mkdirs();
+        File packageJson = new File(nodeModules, "package.json");
+        packageJson.createNewFile();
+
+        Params params = Params.of(tempDir, new String[] { "node_modules/some-module/package.json" });
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+        List<PackageJson> files = collector.collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson);
+    }
+
+    @Test
+    void should_not_return_literal_includes_if_they_are_excluded(@TempDir File tempDir) throws IOException {
+        new File(tempDir, "package.json").createNewFile();
+        File packageLockJson = new File(tempDir, "package-lock.json");
+        packageLockJson.createNewFile();
+
+        Params params = Params.of(tempDir, new String[] { "package.json", "package-lock.json" }, new String[] { "package.json" });
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+        List<PackageJson> files = collector.collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageLockJson);
+    }
+
+    @Test
+    void should_return_each_file_once_if_literal_and_glob_includes_match_the_same_file(@TempDir File tempDir) throws IOException {
+        File packageJson1 = new File(tempDir, "package.json");
+        packageJson1.createNewFile();
+
+        File subDir = new File(tempDir, "dir");
+        subDir.mkdir();
+        File packageJson2 = new File(subDir, "package.json");
+        packageJson2.createNewFile();
+
+        Params params = Params.of(tempDir, new String[] { "package.json", "**/package.json" });
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+        List<PackageJson> files = collector.collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson2, packageJson1);
+    }
+
+    @Test
+    void should_return_the_same_files_in_the_same_order_if_collected_in_parallel(@TempDir File tempDir) throws IOException {
+        for (int i = 0; i < 10; i++) {
+            File moduleDir = new File(tempDir, "modules/module-" + i);
+            moduleDir.mkdirs();
+            new File(moduleDir, "package.json").createNewFile();
+            new File(moduleDir, "README.md").createNewFile();
+
+            File nodeModules = new File(moduleDir, "node_modules/some-module");
+            nodeModules.mkdirs();
+            new File(nodeModules, "package.json").createNewFile();
+        }
+
+        Params params = Params.of(tempDir, new String[] { "**/package.json" });
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+        List<PackageJson> sequential = collector.collect(params);
+        List<PackageJson> parallel = collector.collect(params.withParallelism(4));
+
+        assertThat(parallel).hasSize(10).containsExactlyElementsOf(sequential);
+    }
+
+    @Test
+    void should_log_that_the_parallelism_is_ignored_if_the_discovery_index_is_used(@TempDir File tempDir) throws IOException {
+        File packageJson = new File(tempDir, "modules/module/package.json");
+        packageJson.getParentFile().mkdirs();
+        packageJson.createNewFile();
+        Log log = mock(Log.class);
+        doReturn(true).when(log).isInfoEnabled();
+
+        Params params = Params.of(tempDir, new String[] { "**/package.json" }) //
+            .withDiscoveryIndex(new File(tempDir, "target/discovery.idx")) //
+            .withParallelism(4);
+        List<PackageJson> files = new PackageJsonCollector(logger(() -> log)).collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson);
+        verify(log).info("Ignoring the parallelism of 4 because the discovery index is walked sequentially.");
+    }
+
+    @Test
+    void should_return_the_files_of_the_workspace_members_if_discovered_through_the_workspaces(@TempDir File tempDir)
+        throws IOException {
+        File packageJson = new File(tempDir, "package.json");
+        writeStringToFile(packageJson, "{\"workspaces\":[\"packages/*\",\"!packages/ignored\",\"tools/cli\"]}", UTF_8);
+
+        File packageJson1 = createPackageJson(tempDir, "packages/a");
+        createPackageJson(tempDir, "packages/ignored");
+        createPackageJson(tempDir, "other/b");
+        File packageJson2 = createPackageJson(tempDir, "tools/cli");
+
+        Params params = Params.of(tempDir, new String[] { "package.json" }).withDiscovery(WORKSPACES_DISCOVERY);
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+        List<PackageJson> files = collector.collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson, packageJson1, packageJson2);
+    }
+
+    @Test
+    void should_return_the_files_of_the_workspace_members_if_the_patterns_start_with_the_current_directory(@TempDir File tempDir)
+        throws IOException {
+        File packageJson = new File(tempDir, "package.json");
+        writeStringToFile(packageJson, "{\"workspaces\":[\"./packages/*\"]}", UTF_8);
+        File packageJson1 = createPackageJson(tempDir, "packages/a");
+        createPackageJson(tempDir, "other/b");
+
+        Params params = Params.of(tempDir, new String[] { "package.json" }).withDiscovery(WORKSPACES_DISCOVERY);
+        List<PackageJson> files = new PackageJsonCollector(noOpLogger()).collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson, packageJson1);
+    }
+
+    @Test
+    void should_walk_the_base_directory_if_no_workspace_is_declared(@TempDir File tempDir) throws IOException {
+        File packageJson1 = new File(tempDir, "package.json");
+        writeStringToFile(packageJson1, "{\"name\":\"root\"}", UTF_8);
+        File packageJson2 = createPackageJson(tempDir, "dir");
+
+        Params params = Params.of(tempDir, new String[] { "**/package.json" }).withDiscovery(WORKSPACES_DISCOVERY);
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+        List<PackageJson> files = collector.collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson2, packageJson1);
+    }
+
+    @Test
+    void should_stop_collecting_as_soon_as_the_cancellation_condition_is_met(@TempDir File tempDir) throws IOException {
+        for (int i = 0; i < 20; i++) {
+            createPackageJson(tempDir, "modules/module-" + i);
+        }
+
+        Params params = Params.of(tempDir, new String[] { "package.json", "**/package.json" });
+        Params[] variants =
+            { params, params.withParallelism(4), params.withDiscoveryIndex(new File(tempDir, "target/discovery.idx")) };
+        for (Params variant : variants) {
+            AtomicInteger collected = new AtomicInteger();
+            new PackageJsonCollector(noOpLogger()).collect(variant.withCancellation(() -> collected.get() > 0),
+                pj -> collected.incrementAndGet());
+
+            assertThat(collected).hasValue(1);
+        }
+    }
+
+    private static File createPackageJson(File baseDir, String dir) throws IOException {
+        File packageJson = new File(baseDir, dir + "/package.json");
+        packageJson.getParentFile().mkdirs();
+        writeStringToFile(packageJson, "{}", UTF_8);
+        return packageJson;
+    }
 }
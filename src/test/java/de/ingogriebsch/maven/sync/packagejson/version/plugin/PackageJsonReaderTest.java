@@ -0,0 +1,107 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_16BE;
+import static java.nio.charset.StandardCharsets.UTF_16LE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.CharConversionException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.fasterxml.jackson.core.JsonParser;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonReader.Encoding;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PackageJsonReaderTest {
+
+    private static final String CONTENT = "{\"name\": \"café\", \"version\": \"1.0.0\"}";
+
+    @Test
+    void should_read_a_file_in_the_given_encoding(@TempDir File tempDir) throws IOException {
+        for (Charset encoding : new Charset[] { UTF_8, ISO_8859_1, UTF_16LE }) {
+            Path file = write(tempDir.toPath().resolve("package.json"), new byte[0], CONTENT.getBytes(encoding));
+
+            assertThat(locate(file, encoding)).as(encoding.name()).isEqualTo("1.0.0");
+        }
+    }
+
+    @Test
+    void should_prefer_the_byte_order_mark_over_the_given_encoding(@TempDir File tempDir) throws IOException {
+        byte[][] marks =
+            { { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF }, { (byte) 0xFE, (byte) 0xFF }, { (byte) 0xFF, (byte) 0xFE } };
+        Charset[] charsets = { UTF_8, UTF_16BE, UTF_16LE };
+        for (int i = 0; i < marks.length; i++) {
+            Path file = write(tempDir.toPath().resolve("package.json"), marks[i], CONTENT.getBytes(charsets[i]));
+
+            assertThat(locate(file, ISO_8859_1)).as(charsets[i].name()).isEqualTo("1.0.0");
+            assertThat(locate(file, UTF_8)).as(charsets[i].name()).isEqualTo("1.0.0");
+        }
+    }
+
+    @Test
+    void should_fail_if_a_file_interpreted_as_utf8_is_encoded_in_utf16(@TempDir File tempDir) throws IOException {
+        Path file = write(tempDir.toPath().resolve("package.json"), new byte[0], CONTENT.getBytes(UTF_16BE));
+
+        assertThatThrownBy(() -> locate(file, UTF_8)).isInstanceOf(CharConversionException.class);
+    }
+
+    @Test
+    void detect_should_return_the_encoding_of_the_byte_order_mark() {
+        byte[] content = { (byte) 0xFF, (byte) 0xFE, 0x00, 0x00 };
+
+        assertThat(PackageJsonReader.detect(content, 4, UTF_8)).isEqualTo(Encoding.of(Charset.forName("UTF-32LE"), 4));
+        assertThat(PackageJsonReader.detect(content, 2, UTF_8)).isEqualTo(Encoding.of(UTF_16LE, 2));
+        assertThat(PackageJsonReader.detect(content, 1, UTF_8)).isEqualTo(Encoding.of(UTF_8, 0));
+        assertThat(PackageJsonReader.detect("{}".getBytes(UTF_8), 2, ISO_8859_1)).isEqualTo(Encoding.of(ISO_8859_1, 0));
+    }
+
+    @Test
+    void should_reuse_the_buffers_of_closed_parsers(@TempDir File tempDir) throws IOException {
+        Path file = write(tempDir.toPath().resolve("package.json"), new byte[0], CONTENT.getBytes(UTF_8));
+
+        // closing a parser twice must not hand its buffers to two other parsers.
+        JsonParser parser = PackageJsonReader.open(file, UTF_8);
+        parser.close();
+        parser.close();
+        try (JsonParser first = PackageJsonReader.open(file, UTF_8); JsonParser second = PackageJsonReader.open(file, UTF_8)) {
+            assertThat(VersionLocator.locate(first).getVersion()).isEqualTo("1.0.0");
+            assertThat(VersionLocator.locate(second).getVersion()).isEqualTo("1.0.0");
+        }
+    }
+
+    private static String locate(Path file, Charset encoding) throws IOException {
+        try (JsonParser parser = PackageJsonReader.open(file, encoding)) {
+            return VersionLocator.locate(parser).getVersion();
+        }
+    }
+
+    private static Path write(Path file, byte[] byteOrderMark, byte[] content) throws IOException {
+        byte[] bytes = new byte[byteOrderMark.length + content.length];
+        System.arraycopy(byteOrderMark, 0, bytes, 0, byteOrderMark.length);
+        System.arraycopy(content, 0, bytes, byteOrderMark.length, content.length);
+        return Files.write(file, bytes);
+    }
+}
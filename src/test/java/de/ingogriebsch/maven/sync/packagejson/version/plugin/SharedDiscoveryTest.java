@@ -0,0 +1,195 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJsonCollector.Params;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SharedDiscoveryTest {
+
+    @Test
+    void should_not_report_the_files_of_child_modules_to_the_parent_module(@TempDir File tempDir) throws IOException {
+        File childDir = new File(tempDir, "child");
+        childDir.mkdir();
+        File parentPackageJson = new File(tempDir, "package.json");
+        parentPackageJson.createNewFile();
+        File childPackageJson = new File(childDir, "package.json");
+        childPackageJson.createNewFile();
+
+        MavenSession session = session(tempDir, childDir);
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+
+        assertThat(collect(collector, session, tempDir, "check")).containsExactly(parentPackageJson);
+        assertThat(collect(collector, session, childDir, "check")).containsExactly(childPackageJson);
+    }
+
+    @Test
+    void should_report_a_file_only_once_if_modules_share_the_same_base_directory(@TempDir File tempDir) throws IOException {
+        File packageJson = new File(tempDir, "package.json");
+        packageJson.createNewFile();
+
+        MavenSession session = session(tempDir, tempDir);
+        List<MavenProject> projects = session.getProjects();
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+
+        doReturn(projects.get(0)).when(session).getCurrentProject();
+        assertThat(collect(collector, session, tempDir, "check")).containsExactly(packageJson);
+        doReturn(projects.get(1)).when(session).getCurrentProject();
+        assertThat(collect(collector, session, tempDir, "check")).isEmpty();
+        assertThat(collect(collector, session, tempDir, "sync")).containsExactly(packageJson);
+    }
+
+    @Test
+    void should_report_the_files_again_if_a_module_executes_the_same_goal_again(@TempDir File tempDir) throws IOException {
+        File packageJson = new File(tempDir, "package.json");
+        packageJson.createNewFile();
+
+        MavenSession session = session(tempDir);
+        doReturn(session.getProjects().get(0)).when(session).getCurrentProject();
+        PackageJsonCollector collector = new PackageJsonCollector(noOpLogger());
+
+        assertThat(collect(collector, session, tempDir, "check")).containsExactly(packageJson);
+        assertThat(collect(collector, session, tempDir, "check")).containsExactly(packageJson);
+    }
+
+    @Test
+    void should_report_the_files_of_child_modules_which_do_not_execute_the_goal_to_the_parent_module(@TempDir File tempDir)
+        throws IOException {
+        File childDir = new File(tempDir, "child");
+        childDir.mkdir();
+        File parentPackageJson = new File(tempDir, "package.json");
+        parentPackageJson.createNewFile();
+        File childPackageJson = new File(childDir, "package.json");
+        childPackageJson.createNewFile();
+
+        MavenSession session = session(tempDir, childDir);
+        Params params = Params.of(tempDir, new String[] { "**/package.json", "child/package.json" })
+            .withSharedDiscovery(SharedDiscovery.of(session, "check", p -> p.getBasedir().equals(tempDir)));
+        List<PackageJson> files = new PackageJsonCollector(noOpLogger()).collect(params);
+
+        assertThat(files).extracting(PackageJson::getFile).containsExactlyInAnyOrder(parentPackageJson, childPackageJson);
+    }
+
+    @Test
+    void should_respect_the_includes_and_excludes_of_the_module(@TempDir File tempDir) throws IOException {
+        File dir = new File(tempDir, "dir");
+        dir.mkdir();
+        new File(tempDir, "package.json").createNewFile();
+        File packageJson = new File(dir, "package.json");
+        packageJson.createNewFile();
+
+        MavenSession session = session(tempDir);
+        Params params = Params.of(tempDir, new String[] { "**/package.json" }, new String[] { "package.json" })
+            .withSharedDiscovery(SharedDiscovery.of(session, "check"));
+        List<PackageJson> files = new PackageJsonCollector(noOpLogger()).collect(params);
+
+        assertThat(files).extracting((f) -> f.getFile()).containsExactly(packageJson);
+    }
+
+    @Test
+    void should_only_defer_to_the_modules_which_declare_or_are_invoked_with_the_goal(@TempDir File tempDir) throws IOException {
+        File childDir = new File(tempDir, "child");
+        childDir.mkdir();
+        File parentPackageJson = new File(tempDir, "package.json");
+        parentPackageJson.createNewFile();
+        File childPackageJson = new File(childDir, "package.json");
+        childPackageJson.createNewFile();
+
+        MojoExecution execution = execution("check");
+        MavenSession session = session(tempDir, childDir);
+        assertThat(collect(session, tempDir, execution)).containsExactlyInAnyOrder(parentPackageJson, childPackageJson);
+
+        session = session(tempDir, childDir);
+        Plugin plugin = new Plugin();
+        plugin.setGroupId("de.ingogriebsch.maven");
+        plugin.setArtifactId("sync-packagejson-version-maven-plugin");
+        PluginExecution pluginExecution = new PluginExecution();
+        pluginExecution.addGoal("check");
+        plugin.addExecution(pluginExecution);
+        MavenProject child = session.getProjects().get(1);
+        doReturn(singletonList(plugin)).when(child).getBuildPlugins();
+        assertThat(collect(session, tempDir, execution)).containsExactly(parentPackageJson);
+
+        session = session(tempDir, childDir);
+        doReturn(singletonList("sync-packagejson-version:check")).when(session).getGoals();
+        assertThat(collect(session, tempDir, execution)).containsExactly(parentPackageJson);
+    }
+
+    @Test
+    void commonAncestor_should_return_null_if_the_directories_have_no_common_root() {
+        assertThat(SharedDiscovery.commonAncestor(asList(Paths.get("a", "b"), Paths.get("a", "c")))).isEqualTo(Paths.get("a"));
+        assertThat(SharedDiscovery.commonAncestor(asList(Paths.get("a", "b"), Paths.get("c", "d")))).isNull();
+    }
+
+    private static List<File> collect(MavenSession session, File baseDir, MojoExecution execution) {
+        Params params =
+            Params.of(baseDir, new String[] { "**/package.json" }).withSharedDiscovery(SharedDiscovery.of(session, execution));
+        return new PackageJsonCollector(noOpLogger()).collect(params).stream().map(PackageJson::getFile).collect(toList());
+    }
+
+    private static MojoExecution execution(String goal) {
+        PluginDescriptor pluginDescriptor = new PluginDescriptor();
+        pluginDescriptor.setGroupId("de.ingogriebsch.maven");
+        pluginDescriptor.setArtifactId("sync-packagejson-version-maven-plugin");
+        pluginDescriptor.setGoalPrefix("sync-packagejson-version");
+        MojoDescriptor mojoDescriptor = new MojoDescriptor();
+        mojoDescriptor.setGoal(goal);
+        mojoDescriptor.setPluginDescriptor(pluginDescriptor);
+        return new MojoExecution(mojoDescriptor, "default");
+    }
+
+    private static List<File> collect(PackageJsonCollector collector, MavenSession session, File baseDir, String scope) {
+        Params params =
+            Params.of(baseDir, new String[] { "**/package.json" }).withSharedDiscovery(SharedDiscovery.of(session, scope));
+        return collector.collect(params).stream().map(PackageJson::getFile).collect(toList());
+    }
+
+    private static MavenSession session(File... baseDirs) {
+        List<MavenProject> projects = asList(baseDirs).stream().map(d -> {
+            MavenProject project = mock(MavenProject.class);
+            doReturn(d).when(project).getBasedir();
+            return project;
+        }).collect(toList());
+
+        MavenSession session = mock(MavenSession.class);
+        doReturn(mock(MavenExecutionRequest.class)).when(session).getRequest();
+        doReturn(projects).when(session).getProjects();
+        return session;
+    }
+}
@@ -1,6 +1,9 @@
 package de.ingogriebsch.maven.sync.packagejson.version.plugin;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
+import static org.apache.commons.io.FileUtils.writeStringToFile;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.File;
@@ -8,6 +11,7 @@ import java.net.URI;
 
 import org.apache.maven.project.MavenProject;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class StaticPomVersionEvaluatorTest {
 
@@ -34,4 +38,41 @@ class StaticPomVersionEvaluatorTest {
 
         assertThat(version).isEqualTo("1.0.0-SNAPSHOT");
     }
+
+    @Test
+    void should_fall_back_to_the_version_of_the_parent(@TempDir File tempDir) throws Exception {
+        String version = evaluate(tempDir, "<project><modelVersion>4.0.0</modelVersion>" //
+                + "<parent><groupId>a</groupId><artifactId>b</artifactId><version>2.0.0</version></parent>" //
+                + "<artifactId>c</artifactId><dependencies><dependency><version>9.9.9</version></dependency></dependencies>" //
+                + "</project>");
+
+        assertThat(version).isEqualTo("2.0.0");
+    }
+
+    @Test
+    void should_ignore_the_versions_nested_in_other_elements(@TempDir File tempDir) throws Exception {
+        String version = evaluate(tempDir, "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">" //
+                + "<parent><version>2.0.0</version></parent>" //
+                + "<build><plugins><plugin><version>9.9.9</version></plugin></plugins></build>" //
+                + "<profiles><profile><properties><version>8.8.8</version></properties></profile></profiles>" //
+                + "<!-- the version may come last --><version> 3.0.0 </version></project>");
+
+        assertThat(version).isEqualTo("3.0.0");
+    }
+
+    @Test
+    void should_stop_right_behind_the_version(@TempDir File tempDir) throws Exception {
+        String version = evaluate(tempDir, "<project><version>1.0.0</version><dependencies><this is not xml");
+
+        assertThat(version).isEqualTo("1.0.0");
+    }
+
+    private static String evaluate(File directory, String pom) throws Exception {
+        File pomFile = new File(directory, "pom.xml");
+        writeStringToFile(pomFile, pom, UTF_8);
+        MavenProject mavenProject = new MavenProject();
+        mavenProject.setFile(pomFile);
+
+        return new StaticPomVersionEvaluator(noOpLogger()).get(mavenProject);
+    }
 }
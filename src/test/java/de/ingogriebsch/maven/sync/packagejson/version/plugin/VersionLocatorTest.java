@@ -0,0 +1,122 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.collect.ImmutableSet;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.VersionLocator.Location;
+import org.junit.jupiter.api.Test;
+
+class VersionLocatorTest {
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    @Test
+    void should_return_character_offsets_if_parsing_characters() throws Exception {
+        String content = "{\"name\": \"café\", \"version\": \"1.0.0\"}";
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            Location location = VersionLocator.locate(parser);
+
+            assertThat(location.getVersion()).isEqualTo("1.0.0");
+            assertThat(content.substring((int) location.getStart(), (int) location.getEnd())).isEqualTo("1.0.0");
+        }
+    }
+
+    @Test
+    void should_return_byte_offsets_if_parsing_bytes() throws Exception {
+        byte[] content = "{\"name\": \"café\", \"version\": \"1.0.0\"}".getBytes(UTF_8);
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            Location location = VersionLocator.locate(parser);
+
+            int length = (int) (location.getEnd() - location.getStart());
+            assertThat(new String(content, (int) location.getStart(), length, UTF_8)).isEqualTo("1.0.0");
+        }
+    }
+
+    @Test
+    void should_stop_right_behind_the_version() throws Exception {
+        try (JsonParser parser = jsonFactory.createParser("{\"version\": \"1.0.0\", this is not json")) {
+            assertThat(VersionLocator.locate(parser).getVersion()).isEqualTo("1.0.0");
+        }
+    }
+
+    @Test
+    void should_return_null_if_there_is_no_top_level_version() throws Exception {
+        try (JsonParser parser = jsonFactory.createParser("{\"dependencies\": {\"version\": \"1.0.0\"}, \"version\": 1}")) {
+            assertThat(VersionLocator.locate(parser)).isNull();
+        }
+        try (JsonParser parser = jsonFactory.createParser("[{\"version\": \"1.0.0\"}]")) {
+            assertThat(VersionLocator.locate(parser)).isNull();
+        }
+    }
+
+    @Test
+    void should_return_both_versions_of_a_lockfile() throws Exception {
+        String content = "{\"name\": \"a\", \"version\": \"1.0.0\", \"lockfileVersion\": 3, \"packages\": {\"\": {\"name\": "
+                + "\"a\", \"version\": \"1.0.1\"}, \"node_modules/b\": {\"version\": \"2.0.0\"}}}";
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            List<Location> locations = VersionLocator.locateLockfile(parser);
+
+            assertThat(locations).extracting(Location::getVersion).containsExactly("1.0.0", "1.0.1");
+            assertThat(locations).extracting(l -> content.substring((int) l.getStart(), (int) l.getEnd()))
+                .containsExactly("1.0.0", "1.0.1");
+        }
+    }
+
+    @Test
+    void should_stop_right_behind_the_version_of_the_root_package_of_a_lockfile() throws Exception {
+        String content = "{\"version\": \"1.0.0\", \"packages\": {\"\": {\"version\": \"1.0.1\"}, this is not json";
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            assertThat(VersionLocator.locateLockfile(parser)).extracting(Location::getVersion).containsExactly("1.0.0", "1.0.1");
+        }
+    }
+
+    @Test
+    void should_stop_right_behind_the_version_of_a_lockfile_in_version_1() throws Exception {
+        String content = "{\"lockfileVersion\": 1, \"version\": \"1.0.0\", \"dependencies\": this is not json";
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            assertThat(VersionLocator.locateLockfile(parser)).extracting(Location::getVersion).containsExactly("1.0.0");
+        }
+    }
+
+    @Test
+    void should_return_the_versions_of_a_lockfile_in_the_order_of_their_appearance() throws Exception {
+        String content = "{\"packages\": {\"node_modules/b\": {\"version\": \"2.0.0\"}, \"\": {\"version\": \"1.0.1\"}}, "
+                + "\"version\": \"1.0.0\"}";
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            assertThat(VersionLocator.locateLockfile(parser)).extracting(Location::getVersion).containsExactly("1.0.1", "1.0.0");
+        }
+    }
+
+    @Test
+    void should_return_the_versions_of_the_workspace_members_of_a_lockfile() throws Exception {
+        String content = "{\"version\": \"1.0.0\", \"packages\": {\"\": {\"version\": \"1.0.0\"}, \"node_modules/b\": "
+                + "{\"version\": \"2.0.0\"}, \"packages/a\": {\"version\": \"1.0.1\"}, \"packages/c\": {\"version\": \"1.0.2\"}}, "
+                + "this is not json";
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            List<Location> locations = VersionLocator.locateLockfile(parser, ImmutableSet.of("packages/a", "packages/c"));
+
+            assertThat(locations).extracting(Location::getVersion).containsExactly("1.0.0", "1.0.0", "1.0.1", "1.0.2");
+        }
+    }
+}
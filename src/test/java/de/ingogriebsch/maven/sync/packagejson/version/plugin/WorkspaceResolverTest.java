@@ -0,0 +1,90 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
+import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WorkspaceResolverTest {
+
+    @Test
+    void should_return_null_if_the_directory_does_not_declare_a_workspace(@TempDir File tempDir) throws IOException {
+        writeStringToFile(new File(tempDir, "package.json"), "{\"name\":\"root\"}", UTF_8);
+
+        WorkspaceResolver resolver = new WorkspaceResolver(noOpLogger());
+        assertThat(resolver.resolve(tempDir.toPath())).isNull();
+    }
+
+    @Test
+    void should_return_the_patterns_of_a_workspaces_array(@TempDir File tempDir) throws IOException {
+        writeStringToFile(new File(tempDir, "package.json"), "{\"workspaces\":[\"packages/*\",\"!packages/x\"]}", UTF_8);
+
+        WorkspaceResolver resolver = new WorkspaceResolver(noOpLogger());
+        assertThat(resolver.resolve(tempDir.toPath())).containsExactly("packages/*", "!packages/x");
+    }
+
+    @Test
+    void should_return_the_patterns_of_a_workspaces_object(@TempDir File tempDir) throws IOException {
+        writeStringToFile(new File(tempDir, "package.json"),
+            "{\"workspaces\":{\"packages\":[\"packages/*\"],\"nohoist\":[\"**/react\"]}}", UTF_8);
+
+        WorkspaceResolver resolver = new WorkspaceResolver(noOpLogger());
+        assertThat(resolver.resolve(tempDir.toPath())).containsExactly("packages/*");
+    }
+
+    @Test
+    void should_prefer_the_patterns_of_a_pnpm_workspace(@TempDir File tempDir) throws IOException {
+        writeStringToFile(new File(tempDir, "package.json"), "{\"workspaces\":[\"packages/*\"]}", UTF_8);
+        writeStringToFile(new File(tempDir, "pnpm-workspace.yaml"), "packages:\n  - 'apps/*'\n  - '!apps/legacy'\n", UTF_8);
+
+        WorkspaceResolver resolver = new WorkspaceResolver(noOpLogger());
+        assertThat(resolver.resolve(tempDir.toPath())).containsExactly("apps/*", "!apps/legacy");
+    }
+
+    @Test
+    void should_resolve_the_members_matched_by_the_patterns(@TempDir File tempDir) throws IOException {
+        for (String member : new String[] { "packages/a", "packages/b", "packages/ignored", "packages/node_modules",
+            "packages/no-package-json", "apps/web/nested/c", "tools/cli", "other/d" }) {
+            new File(tempDir, member).mkdirs();
+            if (!member.endsWith("no-package-json")) {
+                writeStringToFile(new File(tempDir, member + "/package.json"), "{}", UTF_8);
+            }
+        }
+
+        WorkspaceResolver resolver = new WorkspaceResolver(noOpLogger());
+        List<String> patterns = newArrayList("./packages/*", "!packages/ignored", "apps/**", "tools/cli/", "missing/*");
+        assertThat(resolver.members(tempDir.toPath(), patterns, new String[] { "node_modules" }))
+            .containsExactly("apps/web/nested/c", "packages/a", "packages/b", "tools/cli");
+    }
+
+    @Test
+    void should_normalize_the_patterns() {
+        assertThat(WorkspaceResolver.normalize("./packages/*")).isEqualTo("packages/*");
+        assertThat(WorkspaceResolver.normalize("packages\\a\\")).isEqualTo("packages/a");
+        assertThat(WorkspaceResolver.normalize("././tools/cli/")).isEqualTo("tools/cli");
+    }
+}
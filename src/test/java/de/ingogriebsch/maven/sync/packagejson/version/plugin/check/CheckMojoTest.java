@@ -15,24 +15,38 @@
  */
 package de.ingogriebsch.maven.sync.packagejson.version.plugin.check;
 
+import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.List;
 
+import com.google.common.collect.Lists;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.AbstractMojo;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.check.VersionValidator.ConstraintViolation;
 import lombok.SneakyThrows;
 import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 
 class CheckMojoTest {
 
@@ -115,6 +129,239 @@ class CheckMojoTest {
         assertThatNoException().isThrownBy(() -> mojo.execute());
     }
 
+    @Test
+    void should_take_the_versions_written_by_the_sync_goal_of_the_same_session_from_the_header_cache(@TempDir File tempDir)
+        throws Exception {
+        File packageJson = new File(tempDir, "package.json");
+        writeStringToFile(packageJson, "{\"version\": \"1.0.0\"}", UTF_8);
+
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+        doReturn("1.1.0").when(mavenProject).getVersion();
+        MavenSession session = mock(MavenSession.class);
+        doReturn(mock(MavenExecutionRequest.class)).when(session).getRequest();
+
+        // the sync goal lives in another package, so it is only accessible through reflection.
+        Constructor<?> constructor =
+            Class.forName(AbstractMojo.class.getPackage().getName() + ".sync.SyncMojo").getDeclaredConstructor();
+        constructor.setAccessible(true);
+        AbstractMojo sync = (AbstractMojo) constructor.newInstance();
+        apply(sync, "log", mock(Log.class));
+        apply(sync, "project", mavenProject);
+        apply(sync, "session", session);
+        apply(sync, "encoding", UTF_8.toString());
+        apply(sync, "includes", new String[] { "package.json" });
+        apply(sync, "pomVersionEvaluation", "runtime");
+        sync.execute();
+
+        Log log = mock(Log.class);
+        doReturn(true).when(log).isDebugEnabled();
+        CheckMojo check = new CheckMojo();
+        apply(check, "log", log);
+        apply(check, "project", mavenProject);
+        apply(check, "session", session);
+        apply(check, "encoding", UTF_8.toString());
+        apply(check, "includes", new String[] { "package.json" });
+        apply(check, "pomVersionEvaluation", "runtime");
+
+        assertThatNoException().isThrownBy(() -> check.execute());
+        verify(log).debug("Took the version(s) of 'package.json' from the header cache.");
+    }
+
+    @Test
+    void should_report_the_violations_in_a_stable_order_if_validating_through_several_workers(@TempDir File tempDir)
+        throws IOException {
+        List<String> expected = Lists.newArrayList();
+        for (int i = 0; i < 50; i++) {
+            String name = format("packages/%02d/package.json", i);
+            String version = i % 3 == 0 ? "1.0.0" : "1.1.0";
+            writeStringToFile(new File(tempDir, name), "{\"version\": \"" + version + "\"}", UTF_8);
+            if (!version.equals("1.1.0")) {
+                expected.add(ConstraintViolation.of(name, version, "1.1.0").toString());
+            }
+        }
+
+        for (String workerThreads : AbstractMojo.WORKER_THREADS) {
+            MavenProject mavenProject = mock(MavenProject.class);
+            doReturn(tempDir).when(mavenProject).getBasedir();
+            doReturn("1.1.0").when(mavenProject).getVersion();
+
+            Log log = mock(Log.class);
+            doReturn(true).when(log).isErrorEnabled();
+            CheckMojo mojo = new CheckMojo();
+            apply(mojo, "log", log);
+            apply(mojo, "project", mavenProject);
+            apply(mojo, "encoding", UTF_8.toString());
+            apply(mojo, "includes", new String[] { "packages/*/package.json" });
+            apply(mojo, "pomVersionEvaluation", "runtime");
+            apply(mojo, "workers", 4);
+            apply(mojo, "workerThreads", workerThreads);
+
+            assertThatThrownBy(() -> mojo.execute()).isInstanceOf(MojoFailureException.class);
+
+            ArgumentCaptor<CharSequence> errors = ArgumentCaptor.forClass(CharSequence.class);
+            verify(log, atLeastOnce()).error(errors.capture());
+            assertThat(errors.getAllValues()).extracting(CharSequence::toString).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void should_skip_the_unchanged_package_jsons_through_the_fingerprint_store(@TempDir File tempDir) throws IOException {
+        for (int i = 0; i < 4; i++) {
+            File packageJson = new File(tempDir, format("packages/%d/package.json", i));
+            writeStringToFile(packageJson, "{\"version\": \"1.1.0\"}", UTF_8);
+            packageJson.setLastModified(System.currentTimeMillis() - 10000);
+        }
+        Build build = new Build();
+        build.setDirectory(new File(tempDir, "target").getAbsolutePath());
+
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+        doReturn(build).when(mavenProject).getBuild();
+        doReturn("1.1.0").when(mavenProject).getVersion();
+
+        String[] expected = { "Skipped 0 of 4 package.json's through the fingerprint store (hit ratio 0%).",
+            "Skipped 4 of 4 package.json's through the fingerprint store (hit ratio 100%)." };
+        for (String message : expected) {
+            Log log = mock(Log.class);
+            doReturn(true).when(log).isInfoEnabled();
+            CheckMojo mojo = new CheckMojo();
+            apply(mojo, "log", log);
+            apply(mojo, "project", mavenProject);
+            apply(mojo, "encoding", UTF_8.toString());
+            apply(mojo, "includes", new String[] { "packages/*/package.json" });
+            apply(mojo, "pomVersionEvaluation", "runtime");
+            apply(mojo, "fingerprints", true);
+
+            assertThatNoException().isThrownBy(() -> mojo.execute());
+            verify(log).info(message);
+        }
+    }
+
+    @Test
+    void should_cancel_the_remaining_work_after_the_first_violation_if_failFast_is_set(@TempDir File tempDir) throws IOException {
+        for (int i = 0; i < 100; i++) {
+            writeStringToFile(new File(tempDir, format("packages/%02d/package.json", i)), "{\"version\": \"1.0.0\"}", UTF_8);
+        }
+
+        for (int workers : new int[] { 1, 4 }) {
+            MavenProject mavenProject = mock(MavenProject.class);
+            doReturn(tempDir).when(mavenProject).getBasedir();
+            doReturn("1.1.0").when(mavenProject).getVersion();
+
+            Log log = mock(Log.class);
+            doReturn(true).when(log).isErrorEnabled();
+            CheckMojo mojo = new CheckMojo();
+            apply(mojo, "log", log);
+            apply(mojo, "project", mavenProject);
+            apply(mojo, "encoding", UTF_8.toString());
+            apply(mojo, "includes", new String[] { "packages/*/package.json" });
+            apply(mojo, "pomVersionEvaluation", "runtime");
+            apply(mojo, "workers", workers);
+            apply(mojo, "failFast", true);
+
+            assertThatThrownBy(() -> mojo.execute()).isInstanceOf(MojoFailureException.class);
+
+            // only the files which were already being validated by another worker may add to the first violation.
+            ArgumentCaptor<CharSequence> errors = ArgumentCaptor.forClass(CharSequence.class);
+            verify(log, atLeastOnce()).error(errors.capture());
+            assertThat(errors.getAllValues()).hasSizeBetween(1, workers);
+        }
+    }
+
+    @Test
+    void should_log_only_the_retained_violations_and_write_all_of_them_into_the_reports(@TempDir File tempDir)
+        throws IOException {
+        for (int i = 0; i < 10; i++) {
+            writeStringToFile(new File(tempDir, format("packages/%02d/package.json", i)), "{\"version\": \"1.0.0\"}", UTF_8);
+        }
+        File reportDirectory = new File(tempDir, "target/reports");
+
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+        doReturn("1.1.0").when(mavenProject).getVersion();
+
+        Log log = mock(Log.class);
+        doReturn(true).when(log).isErrorEnabled();
+        CheckMojo mojo = new CheckMojo();
+        apply(mojo, "log", log);
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "encoding", UTF_8.toString());
+        apply(mojo, "includes", new String[] { "packages/*/package.json" });
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "reports", new String[] { "json", "junit" });
+        apply(mojo, "reportDirectory", reportDirectory);
+        apply(mojo, "retainedViolations", 3);
+
+        assertThatThrownBy(() -> mojo.execute()).isInstanceOf(MojoFailureException.class)
+            .hasMessageStartingWith("10 package.json's");
+
+        ArgumentCaptor<CharSequence> errors = ArgumentCaptor.forClass(CharSequence.class);
+        verify(log, atLeastOnce()).error(errors.capture());
+        assertThat(errors.getAllValues()).extracting(CharSequence::toString).containsExactly(
+            ConstraintViolation.of("packages/00/package.json", "1.0.0", "1.1.0").toString(),
+            ConstraintViolation.of("packages/01/package.json", "1.0.0", "1.1.0").toString(),
+            ConstraintViolation.of("packages/02/package.json", "1.0.0", "1.1.0").toString(),
+            "... and 7 more package.json's which are not in sync (see the reports of the check).");
+        assertThat(reportDirectory.list()).containsExactlyInAnyOrder("check-report.json",
+            "TEST-sync-packagejson-version.check.xml");
+    }
+
+    @Test
+    void should_not_point_to_the_reports_if_no_report_is_written(@TempDir File tempDir) throws IOException {
+        for (int i = 0; i < 5; i++) {
+            writeStringToFile(new File(tempDir, format("packages/%02d/package.json", i)), "{\"version\": \"1.0.0\"}", UTF_8);
+        }
+
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+        doReturn("1.1.0").when(mavenProject).getVersion();
+
+        Log log = mock(Log.class);
+        doReturn(true).when(log).isErrorEnabled();
+        CheckMojo mojo = new CheckMojo();
+        apply(mojo, "log", log);
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "encoding", UTF_8.toString());
+        apply(mojo, "includes", new String[] { "packages/*/package.json" });
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "retainedViolations", 2);
+
+        assertThatThrownBy(() -> mojo.execute()).isInstanceOf(MojoFailureException.class);
+
+        verify(log).error("... and 3 more package.json's which are not in sync "
+                + "(raise 'retainedViolations' or enable 'reports' to list all of them).");
+        assertThat(new File(tempDir, "target")).doesNotExist();
+    }
+
+    @Test
+    void should_fail_if_a_report_format_is_not_supported(@TempDir File tempDir) {
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+
+        CheckMojo mojo = new CheckMojo();
+        apply(mojo, "log", mock(Log.class));
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "reports", new String[] { "html" });
+
+        assertThatThrownBy(() -> mojo.execute()).isInstanceOf(MojoExecutionException.class);
+    }
+
+    @Test
+    void should_fail_if_worker_threads_are_not_supported(@TempDir File tempDir) {
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+
+        CheckMojo mojo = new CheckMojo();
+        apply(mojo, "log", mock(Log.class));
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "workerThreads", "green");
+
+        assertThatThrownBy(() -> mojo.execute()).isInstanceOf(MojoExecutionException.class);
+    }
+
     @SneakyThrows
     private static <T> T apply(T instance, String name, Object value) {
         FieldUtils.writeField(instance, name, value, true);
@@ -0,0 +1,118 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin.check;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptySet;
+
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.check.CheckReport.JSON;
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.check.CheckReport.JUNIT;
+import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.check.VersionValidator.ConstraintViolation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+class CheckReportTest {
+
+    @Test
+    void should_write_the_violations_as_json(@TempDir File tempDir) throws Exception {
+        Path directory = tempDir.toPath().resolve("reports");
+        try (CheckReport report = CheckReport.open(directory, ImmutableSet.of(JSON), 10)) {
+            report.passed("a/package.json");
+            report.failed(ConstraintViolation.of("b/package.json", "1.0.0", "1.1.0"));
+            report.complete();
+        }
+
+        JsonNode json = new ObjectMapper().readTree(directory.resolve("check-report.json").toFile());
+        assertThat(json.get("checked").asInt()).isEqualTo(2);
+        assertThat(json.get("violated").asInt()).isEqualTo(1);
+        assertThat(json.get("violations")).hasSize(1);
+        assertThat(json.get("violations").get(0).get("packageJson").asText()).isEqualTo("b/package.json");
+        assertThat(json.get("violations").get(0).get("version").asText()).isEqualTo("1.0.0");
+        assertThat(json.get("violations").get(0).get("pomVersion").asText()).isEqualTo("1.1.0");
+    }
+
+    @Test
+    void should_write_each_file_as_a_junit_test_case(@TempDir File tempDir) throws Exception {
+        Path directory = tempDir.toPath().resolve("reports");
+        ConstraintViolation violation = ConstraintViolation.of("b/package.json", "1.0.0", "1.1.0");
+        try (CheckReport report = CheckReport.open(directory, ImmutableSet.of(JUNIT), 10)) {
+            report.passed("a/package.json");
+            report.failed(violation);
+            report.complete();
+        }
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+            .parse(directory.resolve("TEST-sync-packagejson-version.check.xml").toFile());
+        Element testsuite = document.getDocumentElement();
+        assertThat(testsuite.getTagName()).isEqualTo("testsuite");
+        assertThat(testsuite.getAttribute("tests")).isEqualTo("2");
+        assertThat(testsuite.getAttribute("failures")).isEqualTo("1");
+        assertThat(testsuite.getAttribute("errors")).isEqualTo("0");
+        assertThat(testsuite.getAttribute("skipped")).isEqualTo("0");
+        NodeList testcases = document.getElementsByTagName("testcase");
+        assertThat(testcases.getLength()).isEqualTo(2);
+        assertThat(((Element) testcases.item(0)).getAttribute("name")).isEqualTo("a/package.json");
+        assertThat(directory.toFile().list()).containsExactly("TEST-sync-packagejson-version.check.xml");
+        assertThat(((Element) testcases.item(0)).getElementsByTagName("failure").getLength()).isZero();
+        Element failure = (Element) ((Element) testcases.item(1)).getElementsByTagName("failure").item(0);
+        assertThat(failure.getAttribute("message")).isEqualTo(violation.toString());
+    }
+
+    @Test
+    void should_not_write_the_totals_if_the_report_is_not_completed(@TempDir File tempDir) throws Exception {
+        Path directory = tempDir.toPath().resolve("reports");
+        writeStringToFile(directory.resolve("TEST-sync-packagejson-version.check.xml").toFile(), "<testsuite/>", UTF_8);
+        try (CheckReport report = CheckReport.open(directory, ImmutableSet.of(JSON, JUNIT), 10)) {
+            report.passed("a/package.json");
+            report.failed(ConstraintViolation.of("b/package.json", "1.0.0", "1.1.0"));
+        }
+
+        JsonNode json = new ObjectMapper().readTree(directory.resolve("check-report.json").toFile());
+        assertThat(json.has("checked")).isFalse();
+        assertThat(json.has("violated")).isFalse();
+        assertThat(json.get("violations")).hasSize(1);
+        assertThat(directory.toFile().list()).containsExactly("check-report.json");
+    }
+
+    @Test
+    void should_retain_only_the_violations_of_the_files_with_the_lowest_names(@TempDir File tempDir) throws Exception {
+        try (CheckReport report = CheckReport.open(tempDir.toPath(), emptySet(), 3)) {
+            for (int i = 9; i >= 0; i--) {
+                report.failed(ConstraintViolation.of(format("%d/package.json", i), "1.0.0", "1.1.0"));
+            }
+
+            assertThat(report.getViolations()).isEqualTo(10);
+            assertThat(report.getRetainedViolations()).extracting(ConstraintViolation::getPackageJsonName)
+                .containsExactly("0/package.json", "1/package.json", "2/package.json");
+        }
+        assertThat(tempDir.list()).isEmpty();
+    }
+}
@@ -0,0 +1,110 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin.check;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
+import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJson;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.check.FingerprintStore.Entry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FingerprintStoreTest {
+
+    @Test
+    void should_remember_the_files_in_sync_as_long_as_they_and_the_version_are_unchanged(@TempDir File tempDir)
+        throws IOException {
+        PackageJson packageJson = packageJson(tempDir, "{\"version\": \"1.0.0\"}");
+        Path file = tempDir.toPath().resolve("target/fingerprints.idx");
+
+        FingerprintStore store = FingerprintStore.load(file, "UTF-8", false, noOpLogger());
+        Entry fingerprint = store.fingerprint(packageJson, "1.0.0");
+        assertThat(store.isInSync(packageJson, fingerprint)).isFalse();
+        store.update(packageJson, fingerprint);
+        store.save();
+
+        store = FingerprintStore.load(file, "UTF-8", false, noOpLogger());
+        assertThat(store.isInSync(packageJson, store.fingerprint(packageJson, "1.0.0"))).isTrue();
+        assertThat(store.isInSync(packageJson, store.fingerprint(packageJson, "1.1.0"))).isFalse();
+
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.1\"}", UTF_8);
+        packageJson.getFile().setLastModified(System.currentTimeMillis() - 5000);
+        assertThat(store.isInSync(packageJson, store.fingerprint(packageJson, "1.0.0"))).isFalse();
+    }
+
+    @Test
+    void should_discard_the_store_if_the_key_has_changed(@TempDir File tempDir) throws IOException {
+        PackageJson packageJson = packageJson(tempDir, "{\"version\": \"1.0.0\"}");
+        Path file = tempDir.toPath().resolve("fingerprints.idx");
+
+        FingerprintStore store = FingerprintStore.load(file, "UTF-8", false, noOpLogger());
+        store.update(packageJson, store.fingerprint(packageJson, "1.0.0"));
+        store.save();
+
+        store = FingerprintStore.load(file, "ISO-8859-1", false, noOpLogger());
+        assertThat(store.isInSync(packageJson, store.fingerprint(packageJson, "1.0.0"))).isFalse();
+    }
+
+    @Test
+    void should_not_save_recently_modified_files_unless_their_content_is_hashed(@TempDir File tempDir) throws IOException {
+        PackageJson packageJson = packageJson(tempDir, "{\"version\": \"1.0.0\"}");
+        packageJson.getFile().setLastModified(System.currentTimeMillis());
+        Path file = tempDir.toPath().resolve("fingerprints.idx");
+
+        for (boolean hashContent : new boolean[] { false, true }) {
+            FingerprintStore store = FingerprintStore.load(file, "UTF-8", hashContent, noOpLogger());
+            store.update(packageJson, store.fingerprint(packageJson, "1.0.0"));
+            store.save();
+
+            store = FingerprintStore.load(file, "UTF-8", hashContent, noOpLogger());
+            assertThat(store.isInSync(packageJson, store.fingerprint(packageJson, "1.0.0"))).isEqualTo(hashContent);
+        }
+    }
+
+    @Test
+    void should_notice_a_change_which_keeps_the_size_and_the_last_modification_time_if_the_content_is_hashed(
+        @TempDir File tempDir) throws IOException {
+        PackageJson packageJson = packageJson(tempDir, "{\"version\": \"1.0.0\"}");
+        long lastModified = packageJson.getFile().lastModified();
+        Path file = tempDir.toPath().resolve("fingerprints.idx");
+
+        FingerprintStore store = FingerprintStore.load(file, "UTF-8", true, noOpLogger());
+        store.update(packageJson, store.fingerprint(packageJson, "1.0.0"));
+        store.save();
+
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.9\"}", UTF_8);
+        packageJson.getFile().setLastModified(lastModified);
+
+        store = FingerprintStore.load(file, "UTF-8", true, noOpLogger());
+        assertThat(store.isInSync(packageJson, store.fingerprint(packageJson, "1.0.0"))).isFalse();
+    }
+
+    private static PackageJson packageJson(File baseDir, String content) throws IOException {
+        File file = new File(baseDir, "package.json");
+        writeStringToFile(file, content, UTF_8);
+        // a file which is modified around the time the store is saved is not remembered without a hash of its content.
+        file.setLastModified(System.currentTimeMillis() - 10000);
+        return PackageJson.of(baseDir, file);
+    }
+}
@@ -15,18 +15,27 @@
  */
 package de.ingogriebsch.maven.sync.packagejson.version.plugin.check;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
 
 import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
+import static org.apache.commons.io.FileUtils.writeByteArrayToFile;
 import static org.apache.commons.io.FileUtils.writeStringToFile;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Optional;
 
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.HeaderCache;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJson;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.VersionLocator.Location;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.check.VersionValidator.ConstraintViolation;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -46,6 +55,43 @@ class VersionValidatorTest {
         assertThat(violation).isEmpty();
     }
 
+    @Test
+    void should_take_the_versions_from_the_header_cache_as_long_as_the_file_is_unchanged(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.0\"}", UTF_8);
+        Path path = age(packageJson.getFile().toPath());
+        HeaderCache headerCache = HeaderCache.of(10);
+        headerCache.put(path, emptySet(), HeaderCache.fingerprint(path), singletonList(Location.of("2.0.0", 13, 18)));
+
+        VersionValidator validator = new VersionValidator(noOpLogger());
+        assertThat(validator.validate("2.0.0", packageJson, UTF_8, headerCache)).isEmpty();
+
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.1\"}", UTF_8);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - 5_000));
+        assertThat(validator.validate("2.0.0", packageJson, UTF_8, headerCache)).isNotEmpty();
+        assertThat(headerCache.get(path, emptySet(), HeaderCache.fingerprint(path))).extracting(Location::getVersion)
+            .containsExactly("1.0.1");
+    }
+
+    @Test
+    void should_not_take_the_versions_from_the_header_cache_if_the_file_was_changed_within_the_same_timestamp(
+        @TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.2.3\"}", UTF_8);
+        Path path = packageJson.getFile().toPath();
+        FileTime modified = Files.getLastModifiedTime(path);
+        HeaderCache headerCache = HeaderCache.of(10);
+
+        VersionValidator validator = new VersionValidator(noOpLogger());
+        assertThat(validator.validate("1.2.3", packageJson, UTF_8, headerCache)).isEmpty();
+
+        // an edit which keeps the size of the file and happens within the same tick of the file system clock.
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.2.4\"}", UTF_8);
+        Files.setLastModifiedTime(path, modified);
+
+        assertThat(validator.validate("1.2.3", packageJson, UTF_8, headerCache)).isNotEmpty();
+    }
+
     @Test
     void should_return_a_constraint_violation_if_the_version_does_not_match(@TempDir File tempDir) throws Exception {
         String pomVersion = "1.2.3-SNAPSHOT";
@@ -68,6 +114,83 @@ class VersionValidatorTest {
         assertThatThrownBy(() -> validator.validate("1.2.3-SNAPSHOT", packageJson, UTF_8)).isInstanceOf(IOException.class);
     }
 
+    @Test
+    void should_validate_the_top_level_version_even_if_a_nested_version_comes_first(@TempDir File tempDir) throws Exception {
+        String version = "1.2.3-SNAPSHOT";
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(),
+            "{\"packages\": {\"\": {\"version\": \"0.0.1\"}}, \"tags\": [{\"version\": \"0.0.2\"}], \"version\": \"" + version
+                    + "\"}",
+            UTF_8);
+
+        VersionValidator validator = new VersionValidator(noOpLogger());
+        Optional<ConstraintViolation> violation = validator.validate(version, packageJson, UTF_8);
+
+        assertThat(violation).isEmpty();
+    }
+
+    @Test
+    void should_return_a_constraint_violation_if_the_file_has_no_version(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"name\": \"some-name\"}", UTF_8);
+
+        VersionValidator validator = new VersionValidator(noOpLogger());
+        Optional<ConstraintViolation> violation = validator.validate("1.2.3-SNAPSHOT", packageJson, UTF_8);
+
+        assertThat(violation).isNotEmpty();
+    }
+
+    @Test
+    void should_return_a_constraint_violation_if_the_root_package_of_a_lockfile_does_not_match(@TempDir File tempDir)
+        throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package-lock.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.2.3\", \"lockfileVersion\": 3, \"packages\": {\"\": "
+                + "{\"version\": \"1.2.2\"}, \"node_modules/a\": {\"version\": \"1.2.3\"}}}",
+            UTF_8);
+
+        VersionValidator validator = new VersionValidator(noOpLogger());
+        Optional<ConstraintViolation> violation = validator.validate("1.2.3", packageJson, UTF_8);
+
+        assertThat(violation).hasValueSatisfying(v -> assertThat(v.getPackageJsonVersion()).isEqualTo("1.2.2"));
+    }
+
+    @Test
+    void should_return_no_constraint_violation_if_both_versions_of_a_lockfile_match(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package-lock.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.2.3\", \"lockfileVersion\": 3, \"packages\": {\"\": "
+                + "{\"version\": \"1.2.3\"}, \"node_modules/a\": {\"version\": \"0.0.1\"}}}",
+            UTF_8);
+
+        VersionValidator validator = new VersionValidator(noOpLogger());
+        Optional<ConstraintViolation> violation = validator.validate("1.2.3", packageJson, UTF_8);
+
+        assertThat(violation).isEmpty();
+    }
+
+    @Test
+    void should_read_the_version_of_a_file_in_another_encoding(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"name\": \"caf\u00e9\", \"version\": \"1.2.3\"}", ISO_8859_1);
+
+        VersionValidator validator = new VersionValidator(noOpLogger());
+
+        assertThat(validator.validate("1.2.3", packageJson, ISO_8859_1)).isEmpty();
+        assertThat(validator.validate("1.2.4", packageJson, ISO_8859_1))
+            .hasValueSatisfying(v -> assertThat(v.getPackageJsonVersion()).isEqualTo("1.2.3"));
+    }
+
+    @Test
+    void should_skip_the_byte_order_mark_of_a_file(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeByteArrayToFile(packageJson.getFile(), new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF });
+        writeStringToFile(packageJson.getFile(), "{\"name\": \"caf\u00e9\", \"version\": \"1.2.3\"}", UTF_8, true);
+
+        VersionValidator validator = new VersionValidator(noOpLogger());
+
+        assertThat(validator.validate("1.2.3", packageJson, UTF_8)).isEmpty();
+        assertThat(validator.validate("1.2.3", packageJson, ISO_8859_1)).isEmpty();
+    }
+
     @Nested
     class ConstraintViolationTest {
 
@@ -85,4 +208,8 @@ class VersionValidatorTest {
                 .contains(pomVersion);
         }
     }
+
+    private static Path age(Path file) throws IOException {
+        return Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+    }
 }
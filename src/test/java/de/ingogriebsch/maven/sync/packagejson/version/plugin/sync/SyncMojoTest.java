@@ -17,17 +17,24 @@ package de.ingogriebsch.maven.sync.packagejson.version.plugin.sync;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import static org.apache.commons.io.FileUtils.readFileToString;
 import static org.apache.commons.io.FileUtils.writeStringToFile;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 import java.io.File;
 import java.io.IOException;
 
 import lombok.SneakyThrows;
 import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
@@ -71,6 +78,189 @@ class SyncMojoTest {
         assertThatNoException().isThrownBy(() -> mojo.execute());
     }
 
+    @Test
+    void should_fail_if_fsync_is_not_supported(@TempDir File tempDir) {
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+
+        SyncMojo mojo = new SyncMojo();
+        apply(mojo, "log", mock(Log.class));
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "fsync", "always");
+
+        assertThatThrownBy(() -> mojo.execute()).isInstanceOf(MojoExecutionException.class);
+    }
+
+    @Test
+    void should_rewrite_the_package_json_with_each_fsync_policy(@TempDir File tempDir) throws IOException {
+        for (String fsync : FsyncPolicy.IDS) {
+            File dir = new File(tempDir, fsync);
+            dir.mkdir();
+            assertRewritten(fsync, dir);
+        }
+    }
+
+    @Test
+    void should_synchronize_the_workspace_members_of_the_lockfile_if_demanded(@TempDir File tempDir) throws IOException {
+        File lockfile = new File(tempDir, "package-lock.json");
+        writeStringToFile(lockfile,
+            "{\"version\": \"1.0.0\", \"lockfileVersion\": 3, \"packages\": {\"\": {\"version\": "
+                    + "\"1.0.0\"}, \"node_modules/a\": {\"link\": true}, \"node_modules/b\": {\"version\": \"1.0.0\"}, "
+                    + "\"packages/a\": {\"version\": \"1.0.0\"}}}",
+            UTF_8);
+        writeStringToFile(new File(tempDir, "package.json"), "{\"version\": \"1.0.0\"}", UTF_8);
+        writeStringToFile(new File(tempDir, "packages/a/package.json"), "{\"version\": \"1.0.0\"}", UTF_8);
+
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+        doReturn("1.1.0").when(mavenProject).getVersion();
+
+        SyncMojo mojo = new SyncMojo();
+        apply(mojo, "log", mock(Log.class));
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "encoding", UTF_8.toString());
+        apply(mojo, "includes", new String[] { "package.json", "package-lock.json", "packages/*/package.json" });
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "lockfileWorkspaceMembers", true);
+
+        assertThatNoException().isThrownBy(() -> mojo.execute());
+        assertThat(readFileToString(lockfile, UTF_8)).isEqualTo("{\"version\": \"1.1.0\", \"lockfileVersion\": 3, \"packages\": "
+                + "{\"\": {\"version\": \"1.1.0\"}, \"node_modules/a\": {\"link\": true}, \"node_modules/b\": {\"version\": "
+                + "\"1.0.0\"}, \"packages/a\": {\"version\": \"1.1.0\"}}}");
+        assertThat(readFileToString(new File(tempDir, "packages/a/package.json"), UTF_8)).isEqualTo("{\"version\": \"1.1.0\"}");
+    }
+
+    @Test
+    void should_leave_all_files_untouched_if_a_file_fails_in_transactional_mode(@TempDir File tempDir) throws IOException {
+        File valid = new File(tempDir, "a/package.json");
+        writeStringToFile(valid, "{\"version\": \"1.0.0\"}", UTF_8);
+        File invalid = new File(tempDir, "b/package.json");
+        writeStringToFile(invalid, "{\"version\": 1.0.0}", UTF_8);
+
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+        doReturn("1.1.0").when(mavenProject).getVersion();
+        Build build = new Build();
+        build.setDirectory(new File(tempDir, "target").getAbsolutePath());
+        doReturn(build).when(mavenProject).getBuild();
+
+        Log log = mock(Log.class);
+        doReturn(true).when(log).isInfoEnabled();
+
+        SyncMojo mojo = new SyncMojo();
+        apply(mojo, "log", log);
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "encoding", UTF_8.toString());
+        apply(mojo, "includes", new String[] { "*/package.json" });
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "transactional", true);
+
+        assertThatThrownBy(() -> mojo.execute()).isInstanceOf(MojoExecutionException.class);
+        verify(log, never()).info(contains("Set the version"));
+        assertThat(readFileToString(valid, UTF_8)).isEqualTo("{\"version\": \"1.0.0\"}");
+        assertThat(valid.getParentFile().list()).containsExactly("package.json");
+        assertThat(new File(tempDir, "target/sync-packagejson-version/sync-transaction.journal")).doesNotExist();
+
+        writeStringToFile(invalid, "{\"version\": \"1.0.0\"}", UTF_8);
+        assertThatNoException().isThrownBy(() -> mojo.execute());
+        assertThat(readFileToString(valid, UTF_8)).isEqualTo("{\"version\": \"1.1.0\"}");
+        assertThat(readFileToString(invalid, UTF_8)).isEqualTo("{\"version\": \"1.1.0\"}");
+        verify(log).info(contains("Set the version in 'a/package.json'"));
+        verify(log).info(contains("Set the version in 'b/package.json'"));
+    }
+
+    @Test
+    void should_roll_back_the_staged_files_if_a_deferred_lockfile_fails_in_transactional_mode(@TempDir File tempDir)
+        throws IOException {
+        File packageJson = new File(tempDir, "package.json");
+        writeStringToFile(packageJson, "{\"version\": \"1.0.0\"}", UTF_8);
+        File lockfile = new File(tempDir, "package-lock.json");
+        writeStringToFile(lockfile,
+            "{\"version\": \"1.0.0\", \"lockfileVersion\": 3, \"packages\": {\"\": {\"version\": 1.0.0}}}", UTF_8);
+
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+        doReturn("1.1.0").when(mavenProject).getVersion();
+        Build build = new Build();
+        build.setDirectory(new File(tempDir, "target").getAbsolutePath());
+        doReturn(build).when(mavenProject).getBuild();
+
+        SyncMojo mojo = new SyncMojo();
+        apply(mojo, "log", mock(Log.class));
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "encoding", UTF_8.toString());
+        apply(mojo, "includes", new String[] { "package.json", "package-lock.json" });
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "lockfileWorkspaceMembers", true);
+        apply(mojo, "transactional", true);
+
+        assertThatThrownBy(() -> mojo.execute()).isInstanceOf(MojoExecutionException.class);
+        assertThat(readFileToString(packageJson, UTF_8)).isEqualTo("{\"version\": \"1.0.0\"}");
+        assertThat(tempDir.list()).containsExactlyInAnyOrder("package.json", "package-lock.json", "target");
+        assertThat(new File(tempDir, "target/sync-packagejson-version/sync-transaction.journal")).doesNotExist();
+    }
+
+    @Test
+    void should_fail_if_workers_is_not_positive(@TempDir File tempDir) {
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+
+        SyncMojo mojo = new SyncMojo();
+        apply(mojo, "log", mock(Log.class));
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "workers", 0);
+
+        assertThatThrownBy(() -> mojo.execute()).isInstanceOf(MojoExecutionException.class);
+    }
+
+    @Test
+    void should_synchronize_the_package_jsons_through_several_workers(@TempDir File tempDir) throws IOException {
+        for (int i = 0; i < 100; i++) {
+            writeStringToFile(new File(tempDir, "packages/" + i + "/package.json"), "{\"version\": \"1.0.0\"}", UTF_8);
+        }
+
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+        doReturn("1.1.0").when(mavenProject).getVersion();
+
+        SyncMojo mojo = new SyncMojo();
+        apply(mojo, "log", mock(Log.class));
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "encoding", UTF_8.toString());
+        apply(mojo, "includes", new String[] { "packages/*/package.json" });
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "workers", 4);
+
+        assertThatNoException().isThrownBy(() -> mojo.execute());
+        for (int i = 0; i < 100; i++) {
+            assertThat(readFileToString(new File(tempDir, "packages/" + i + "/package.json"), UTF_8))
+                .isEqualTo("{\"version\": \"1.1.0\"}");
+        }
+    }
+
+    private static void assertRewritten(String fsync, File tempDir) throws IOException {
+        File packageJson = new File(tempDir, "package.json");
+        writeStringToFile(packageJson, "{\"version\": \"1.0.0\"}", UTF_8);
+
+        MavenProject mavenProject = mock(MavenProject.class);
+        doReturn(tempDir).when(mavenProject).getBasedir();
+        doReturn("1.1.0").when(mavenProject).getVersion();
+
+        SyncMojo mojo = new SyncMojo();
+        apply(mojo, "log", mock(Log.class));
+        apply(mojo, "project", mavenProject);
+        apply(mojo, "encoding", UTF_8.toString());
+        apply(mojo, "includes", new String[] { "package.json" });
+        apply(mojo, "pomVersionEvaluation", "runtime");
+        apply(mojo, "fsync", fsync);
+
+        assertThatNoException().isThrownBy(() -> mojo.execute());
+        assertThat(readFileToString(packageJson, UTF_8)).isEqualTo("{\"version\": \"1.1.0\"}");
+        assertThat(tempDir.list()).containsExactly("package.json");
+    }
+
     @SneakyThrows
     private static <T> T apply(T instance, String name, Object value) {
         FieldUtils.writeField(instance, name, value, true);
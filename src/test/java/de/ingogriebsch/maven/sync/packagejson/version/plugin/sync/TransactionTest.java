@@ -0,0 +1,179 @@
+/*-
+ * Copyright 2019-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.ingogriebsch.maven.sync.packagejson.version.plugin.sync;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionTest {
+
+    @Test
+    void should_replace_the_files_on_commit(@TempDir File tempDir) throws IOException {
+        Path a = write(tempDir.toPath().resolve("a.json"), "a");
+        Path b = write(tempDir.toPath().resolve("b.json"), "b");
+        Path journal = tempDir.toPath().resolve("target/journal");
+
+        Transaction transaction = Transaction.begin(journal, fsyncPolicy(), noOpLogger());
+        write(transaction.stage(a), "a2");
+        write(transaction.stage(b), "b2");
+        assertThat(read(a)).isEqualTo("a");
+        assertThat(journal).exists();
+
+        transaction.commit();
+
+        assertThat(read(a)).isEqualTo("a2");
+        assertThat(read(b)).isEqualTo("b2");
+        assertThat(journal).doesNotExist();
+        assertThat(tempDir.list()).containsExactlyInAnyOrder("a.json", "b.json", "target");
+    }
+
+    @Test
+    void should_flush_the_staged_files_before_the_commit_is_recorded(@TempDir File tempDir) throws IOException {
+        Path a = write(tempDir.toPath().resolve("a.json"), "a");
+        Path b = write(tempDir.toPath().resolve("b.json"), "b");
+        Path journal = tempDir.toPath().resolve("journal");
+        List<Path> flushed = Lists.newArrayList();
+
+        Transaction transaction = Transaction.begin(journal, fsyncPolicy(), noOpLogger(), (path, directory) -> {
+            assertThat(isCommitted(journal)).isFalse();
+            flushed.add(path);
+        });
+        Path tempA = write(transaction.stage(a), "a2");
+        Path tempB = write(transaction.stage(b), "b2");
+        transaction.commit();
+
+        assertThat(flushed).containsExactly(tempA, tempB, tempDir.toPath().toAbsolutePath());
+        assertThat(read(a)).isEqualTo("a2");
+    }
+
+    @Test
+    void should_not_record_the_commit_if_the_staged_files_cannot_be_flushed(@TempDir File tempDir) throws IOException {
+        Path a = write(tempDir.toPath().resolve("a.json"), "a");
+        Path journal = tempDir.toPath().resolve("journal");
+
+        Transaction transaction = Transaction.begin(journal, fsyncPolicy(), noOpLogger(), (path, directory) -> {
+            throw new IOException("The device is gone!");
+        });
+        write(transaction.stage(a), "a2");
+        assertThatThrownBy(transaction::commit).isInstanceOf(IOException.class);
+
+        assertThat(isCommitted(journal)).isFalse();
+        Transaction.recover(journal, noOpLogger());
+        assertThat(read(a)).isEqualTo("a");
+        assertThat(tempDir.list()).containsExactly("a.json");
+    }
+
+    @Test
+    void should_leave_the_files_untouched_on_rollback(@TempDir File tempDir) throws IOException {
+        Path a = write(tempDir.toPath().resolve("a.json"), "a");
+        Path journal = tempDir.toPath().resolve("journal");
+
+        Transaction transaction = Transaction.begin(journal, fsyncPolicy(), noOpLogger());
+        write(transaction.stage(a), "a2");
+        transaction.rollback();
+
+        assertThat(read(a)).isEqualTo("a");
+        assertThat(tempDir.list()).containsExactly("a.json");
+        assertThatThrownBy(() -> transaction.stage(a)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void should_roll_back_a_transaction_which_was_interrupted_while_staging(@TempDir File tempDir) throws IOException {
+        Path a = write(tempDir.toPath().resolve("a.json"), "a");
+        Path journal = tempDir.toPath().resolve("journal");
+
+        // the transaction is neither committed nor rolled back, like if the build died.
+        Transaction interrupted = Transaction.begin(journal, fsyncPolicy(), noOpLogger());
+        write(interrupted.stage(a), "a2");
+
+        Transaction.recover(journal, noOpLogger());
+
+        assertThat(read(a)).isEqualTo("a");
+        assertThat(tempDir.list()).containsExactly("a.json");
+    }
+
+    @Test
+    void should_finish_a_transaction_which_was_interrupted_while_committing(@TempDir File tempDir) throws IOException {
+        Path a = write(tempDir.toPath().resolve("a.json"), "a");
+        Path b = write(tempDir.toPath().resolve("b.json"), "b");
+        Path tempA = write(tempDir.toPath().resolve(".a.json.1.tmp"), "a2");
+        Path tempB = write(tempDir.toPath().resolve(".b.json.2.tmp"), "b2");
+        Path journal = tempDir.toPath().resolve("journal");
+        Files.write(journal, committedJournal(tempA, a, tempB, b));
+        // the build died after the first file was replaced.
+        Transaction.replace(tempA, a);
+
+        Transaction.recover(journal, noOpLogger());
+
+        assertThat(read(a)).isEqualTo("a2");
+        assertThat(read(b)).isEqualTo("b2");
+        assertThat(tempDir.list()).containsExactlyInAnyOrder("a.json", "b.json");
+    }
+
+    private static byte[] committedJournal(Path tempA, Path a, Path tempB, Path b) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            for (Path[] entry : new Path[][] { { tempA, a }, { tempB, b } }) {
+                output.write('S');
+                output.writeUTF(entry[0].toAbsolutePath().toString());
+                output.writeUTF(entry[1].toAbsolutePath().toString());
+            }
+            output.write('C');
+        }
+        return bytes.toByteArray();
+    }
+
+    private static boolean isCommitted(Path journal) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(journal)))) {
+            int type;
+            while ((type = input.read()) == 'S') {
+                input.readUTF();
+                input.readUTF();
+            }
+            return type == 'C';
+        }
+    }
+
+    private static FsyncPolicy fsyncPolicy() {
+        return new FsyncPolicy(FsyncPolicy.NONE, noOpLogger());
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        return Files.write(file, content.getBytes(UTF_8));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), UTF_8);
+    }
+}
@@ -15,23 +15,49 @@
  */
 package de.ingogriebsch.maven.sync.packagejson.version.plugin.sync;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_16BE;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singletonList;
 
 import static de.ingogriebsch.maven.sync.packagejson.version.plugin.Logger.noOpLogger;
 import static org.apache.commons.io.FileUtils.copyFile;
+import static org.apache.commons.io.FileUtils.readFileToByteArray;
 import static org.apache.commons.io.FileUtils.readFileToString;
+import static org.apache.commons.io.FileUtils.writeByteArrayToFile;
 import static org.apache.commons.io.FileUtils.writeStringToFile;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatNoException;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.InstanceOfAssertFactories.map;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Map;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.HeaderCache;
 import de.ingogriebsch.maven.sync.packagejson.version.plugin.PackageJson;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.VersionLocator;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.VersionLocator.Location;
+import de.ingogriebsch.maven.sync.packagejson.version.plugin.sync.VersionWriter.Options;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -119,4 +145,313 @@ class VersionWriterTest {
             .asInstanceOf(map(String.class, Object.class)) //
             .containsEntry("version", "2.0.0");
     }
+
+    @Test
+    void should_only_write_top_level_version_if_a_nested_version_comes_first(@TempDir File tempDir) throws Exception {
+        String content =
+            "{\"dependencies\": {\"a\": {\"version\": \"2.0.0\"}}, \"versions\": [\"3.0.0\"], \"version\": \"1.0.0\"}";
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), content, UTF_8);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("1.2.3-SNAPSHOT", packageJson, UTF_8)).isPresent();
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_8)).isEqualTo(content.replace("1.0.0", "1.2.3-SNAPSHOT"));
+    }
+
+    @Test
+    void should_leave_all_other_characters_untouched(@TempDir File tempDir) throws Exception {
+        String content = "{\t\"name\" :\"caf\u00e9\\u0020\",\r\n  \"version\"\t:  \"1.0.0\"  ,\n\"x\":[1,2]\r\n}\n\n";
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), content, UTF_8);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("2.0.0", packageJson, UTF_8)).isPresent();
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_8)).isEqualTo(content.replace("1.0.0", "2.0.0"));
+    }
+
+    @Test
+    void should_replace_an_escaped_version(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.0\\u002dbeta\", \"private\": true}", UTF_8);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("1.0.0-beta", packageJson, UTF_8)).isEmpty();
+        assertThat(writer.write("1.0.1", packageJson, UTF_8)).isPresent();
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_8)).isEqualTo("{\"version\": \"1.0.1\", \"private\": true}");
+    }
+
+    @Test
+    void should_not_touch_the_file_if_it_has_no_top_level_version(@TempDir File tempDir) throws Exception {
+        String content = "{\"dependencies\": {\"version\": \"2.0.0\"}}";
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), content, UTF_8);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("1.2.3-SNAPSHOT", packageJson, UTF_8)).isEmpty();
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_8)).isEqualTo(content);
+    }
+
+    @Test
+    void should_keep_the_byte_order_mark_of_a_utf8_file(@TempDir File tempDir) throws Exception {
+        byte[] bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeByteArrayToFile(packageJson.getFile(), bom);
+        writeStringToFile(packageJson.getFile(), "{\"name\": \"caf\u00e9\", \"version\": \"1.0.0\"}\n", UTF_8, true);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("1.0.1", packageJson, UTF_8)).isPresent();
+
+        byte[] content = readFileToByteArray(packageJson.getFile());
+        assertThat(content).startsWith(bom);
+        assertThat(new String(content, 3, content.length - 3, UTF_8))
+            .isEqualTo("{\"name\": \"caf\u00e9\", \"version\": \"1.0.1\"}\n");
+    }
+
+    @Test
+    void should_replace_the_version_of_a_file_in_another_encoding(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"name\": \"caf\u00e9\", \"version\": \"1.0.0\"}", ISO_8859_1);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("1.0.1", packageJson, ISO_8859_1)).isPresent();
+
+        assertThat(readFileToString(packageJson.getFile(), ISO_8859_1))
+            .isEqualTo("{\"name\": \"caf\u00e9\", \"version\": \"1.0.1\"}");
+    }
+
+    @Test
+    void should_keep_the_content_behind_the_version_of_a_large_file(@TempDir File tempDir) throws Exception {
+        StringBuilder content = new StringBuilder("{\"version\": \"1.0.0\", \"packages\": {");
+        for (int i = 0; i < 50_000; i++) {
+            content.append(i > 0 ? "," : "").append("\"node_modules/pkg-").append(i).append("\": {\"version\": \"1.0.0\"}");
+        }
+        content.append("}}");
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package-lock.json"));
+        writeStringToFile(packageJson.getFile(), content.toString(), UTF_8);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("10.0.0-SNAPSHOT", packageJson, UTF_8)).isPresent();
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_8))
+            .isEqualTo(content.toString().replaceFirst("1\\.0\\.0", "10.0.0-SNAPSHOT"));
+        assertThat(tempDir.list()).containsExactly("package-lock.json");
+    }
+
+    @Test
+    void should_keep_the_content_around_the_version_of_a_large_file_if_the_version_comes_last(@TempDir File tempDir)
+        throws Exception {
+        StringBuilder content = new StringBuilder("{\"packages\": {");
+        for (int i = 0; i < 50_000; i++) {
+            content.append(i > 0 ? "," : "").append("\"node_modules/pkg-").append(i).append("\": {\"version\": \"1.0.0\"}");
+        }
+        content.append("}, \"version\": \"1.0.0\", \"name\": \"caf\u00e9\"}");
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package-lock.json"));
+        writeStringToFile(packageJson.getFile(), content.toString(), UTF_8);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("10.0.0-SNAPSHOT", packageJson, UTF_8)).isPresent();
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_8))
+            .isEqualTo(content.toString().replace("}, \"version\": \"1.0.0\"", "}, \"version\": \"10.0.0-SNAPSHOT\""));
+        assertThat(tempDir.list()).containsExactly("package-lock.json");
+    }
+
+    @Test
+    void should_fail_if_a_utf8_file_is_encoded_in_utf16(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.0\"}", UTF_16BE);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThatThrownBy(() -> writer.write("1.0.1", packageJson, UTF_8)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void should_replace_the_version_of_a_file_in_the_encoding_of_its_byte_order_mark(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "\uFEFF{\"name\": \"caf\u00e9\", \"version\": \"1.0.0\"}", UTF_16BE);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("1.0.1", packageJson, UTF_8)).isPresent();
+        assertThat(writer.write("1.0.1", packageJson, ISO_8859_1)).isEmpty();
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_16BE))
+            .isEqualTo("\uFEFF{\"name\": \"caf\u00e9\", \"version\": \"1.0.1\"}");
+    }
+
+    @Test
+    void should_keep_the_permissions_of_the_file(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.0\"}", UTF_8);
+        Path path = packageJson.getFile().toPath();
+        assumeTrue(Files.getFileAttributeView(path, PosixFileAttributeView.class) != null, "POSIX permissions not supported");
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(path, permissions);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("1.0.1", packageJson, UTF_8)).isPresent();
+
+        assertThat(Files.getPosixFilePermissions(path)).isEqualTo(permissions);
+    }
+
+    @Test
+    void should_not_touch_the_file_if_the_content_would_not_change(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.0-?\"}", ISO_8859_1);
+        Path path = packageJson.getFile().toPath();
+        FileTime lastModified = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(path, lastModified);
+
+        // the character is not part of the encoding and therefore encoded as '?'.
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("1.0.0-\u4e00", packageJson, ISO_8859_1)).isEmpty();
+
+        assertThat(Files.getLastModifiedTime(path)).isEqualTo(lastModified);
+    }
+
+    @Test
+    void should_restore_the_modification_time_of_the_file_if_demanded(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.0\"}", UTF_8);
+        Path path = packageJson.getFile().toPath();
+        FileTime lastModified = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(path, lastModified);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        FsyncPolicy fsyncPolicy = new FsyncPolicy(FsyncPolicy.NONE, noOpLogger());
+        assertThat(writer.write("1.0.1", packageJson, UTF_8, Options.of(fsyncPolicy).withPreserveFileAttributes(true)))
+            .isPresent();
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_8)).isEqualTo("{\"version\": \"1.0.1\"}");
+        assertThat(Files.getLastModifiedTime(path)).isEqualTo(lastModified);
+    }
+
+    @Test
+    void should_update_the_modification_time_of_the_file_by_default(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.0\"}", UTF_8);
+        Path path = packageJson.getFile().toPath();
+        FileTime lastModified = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(path, lastModified);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("1.0.1", packageJson, UTF_8)).isPresent();
+
+        assertThat(Files.getLastModifiedTime(path)).isGreaterThan(lastModified);
+    }
+
+    @Test
+    void should_replace_both_versions_of_a_lockfile(@TempDir File tempDir) throws Exception {
+        String content = "{\n  \"name\": \"a\",\n  \"version\": \"1.0.0\",\n  \"lockfileVersion\": 3,\n  \"packages\": {\n"
+                + "    \"\": {\n      \"name\": \"a\",\n      \"version\": \"1.0.0\"\n    },\n"
+                + "    \"node_modules/b\": {\n      \"version\": \"1.0.0\"\n    }\n  }\n}\n";
+        for (Charset encoding : new Charset[] { UTF_8, ISO_8859_1 }) {
+            PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package-lock.json"));
+            writeStringToFile(packageJson.getFile(), content, encoding);
+
+            VersionWriter writer = new VersionWriter(noOpLogger());
+            assertThat(writer.write("2.0.0-SNAPSHOT", packageJson, encoding)).isPresent();
+
+            assertThat(readFileToString(packageJson.getFile(), encoding))
+                .isEqualTo(content.replace("\"version\": \"1.0.0\",", "\"version\": \"2.0.0-SNAPSHOT\",").replace(
+                    "\"version\": \"1.0.0\"\n    },\n    \"node", "\"version\": \"2.0.0-SNAPSHOT\"\n    },\n    \"node"));
+        }
+    }
+
+    @Test
+    void should_replace_the_version_of_the_root_package_of_a_lockfile_if_only_this_one_differs(@TempDir File tempDir)
+        throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package-lock.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"2.0.0\", \"packages\": {\"\": {\"version\": \"1.0.0\"}}}",
+            UTF_8);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("2.0.0", packageJson, UTF_8)).isPresent();
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_8))
+            .isEqualTo("{\"version\": \"2.0.0\", \"packages\": {\"\": {\"version\": \"2.0.0\"}}}");
+    }
+
+    @Test
+    void should_replace_only_the_top_level_version_of_a_file_which_is_not_a_lockfile(@TempDir File tempDir) throws Exception {
+        String content = "{\"version\": \"1.0.0\", \"packages\": {\"\": {\"version\": \"1.0.0\"}}}";
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), content, UTF_8);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        assertThat(writer.write("2.0.0", packageJson, UTF_8)).isPresent();
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_8)).isEqualTo(content.replaceFirst("1\\.0\\.0", "2.0.0"));
+    }
+
+    @Test
+    void should_write_the_same_file_from_several_threads(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"name\": \"a\", \"version\": \"1.0.0\"}", UTF_8);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tasks = Lists.newArrayList();
+            for (int i = 0; i < 200; i++) {
+                String version = "1.0." + (i % 2);
+                // each module of a parallel build has its own writer.
+                VersionWriter writer = new VersionWriter(noOpLogger());
+                tasks.add(executor.submit(() -> writer.write(version, packageJson, UTF_8)));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(readFileToString(packageJson.getFile(), UTF_8)).isIn("{\"name\": \"a\", \"version\": \"1.0.0\"}",
+            "{\"name\": \"a\", \"version\": \"1.0.1\"}");
+        assertThat(tempDir.list()).containsExactly("package.json");
+    }
+
+    @Test
+    void should_record_the_written_versions_in_the_header_cache(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package-lock.json"));
+        writeStringToFile(packageJson.getFile(),
+            "{\"version\": \"1.0\", \"lockfileVersion\": 3, \"packages\": {\"\": {\"version\": \"1.0\"}}}", UTF_8);
+        Path path = packageJson.getFile().toPath();
+        HeaderCache headerCache = HeaderCache.of(10);
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        Options options = Options.of(new FsyncPolicy(FsyncPolicy.NONE, noOpLogger())).withHeaderCache(headerCache);
+        assertThat(writer.write("2.0.0-SNAPSHOT", packageJson, UTF_8, options)).isPresent();
+
+        // the file was just written, so the entry is bound to its content as well.
+        try (JsonParser parser = new JsonFactory().createParser(path.toFile())) {
+            assertThat(headerCache.get(path, emptySet(), HeaderCache.fingerprint(path)))
+                .isEqualTo(VersionLocator.locateLockfile(parser));
+        }
+    }
+
+    @Test
+    void should_not_read_the_file_if_the_header_cache_knows_it_is_in_sync(@TempDir File tempDir) throws Exception {
+        PackageJson packageJson = PackageJson.of(tempDir, new File(tempDir, "package.json"));
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.0\"}", UTF_8);
+        Path path = age(packageJson.getFile().toPath());
+        // the cache claims a version the file does not contain, so the file is obviously not read if the claim is trusted.
+        HeaderCache headerCache = HeaderCache.of(10);
+        headerCache.put(path, emptySet(), HeaderCache.fingerprint(path), singletonList(Location.of("2.0.0", 13, 18)));
+
+        VersionWriter writer = new VersionWriter(noOpLogger());
+        Options options = Options.of(new FsyncPolicy(FsyncPolicy.NONE, noOpLogger())).withHeaderCache(headerCache);
+        assertThat(writer.write("2.0.0", packageJson, UTF_8, options)).isEmpty();
+
+        // a changed file is read again.
+        writeStringToFile(packageJson.getFile(), "{\"version\": \"1.0.1\"}", UTF_8);
+        assertThat(writer.write("2.0.0", packageJson, UTF_8, options)).isPresent();
+        assertThat(readFileToString(packageJson.getFile(), UTF_8)).isEqualTo("{\"version\": \"2.0.0\"}");
+    }
+
+    private static Path age(Path file) throws IOException {
+        return Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+    }
 }